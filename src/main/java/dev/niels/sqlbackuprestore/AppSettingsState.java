@@ -5,10 +5,17 @@ import com.intellij.openapi.components.PersistentStateComponent;
 import com.intellij.openapi.components.State;
 import com.intellij.openapi.components.Storage;
 import com.intellij.util.xmlb.XmlSerializerUtil;
+import dev.niels.sqlbackuprestore.backup.BackupSchedule;
+import dev.niels.sqlbackuprestore.backup.VerificationResult;
 import lombok.Data;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 @State(
         name = "dev.niels.sqlbackuprestore.AppSettingsState",
         storages = {@Storage("SQLBackupRestore.xml")}
@@ -17,9 +24,69 @@ import org.jetbrains.annotations.Nullable;
 public class AppSettingsState implements PersistentStateComponent<AppSettingsState> {
     private long compressionSize = 0L;
     private boolean useCompressedBackup = true;
+    private boolean stripedBackup = false;
+    /**
+     * Number of stripes of the last striped backup
+     */
+    private int backupStripes = 2;
+    private boolean tuneBackupTransfer = false;
+    private boolean verifyBackup = false;
+    /**
+     * Number of URLs a backup to S3 is striped over, every URL holds at most 10,000 parts
+     */
+    private int s3Stripes = 1;
+    /**
+     * Size in MB of the parts that are uploaded to S3 (MAXTRANSFERSIZE), 5 to 20
+     */
+    private int s3PartSize = 10;
+    private String s3Region = "us-east-1";
+    /**
+     * Last used location in the bucket browser, the keys are in the password safe
+     */
+    private String s3Endpoint = "";
+    private String s3Bucket = "";
+    private String s3Prefix = "";
+    /**
+     * Maximum number of backups that run at the same time on one server when backing up multiple databases
+     */
+    private int backupConcurrency = 2;
     private boolean useDbNameOnDownload = false;
     private boolean askForRestoreFileLocations = false;
     private boolean enableDownloadOption = false;
+    private int downloadParallelism = 1;
+    private boolean directDownload = false;
+    private boolean autoTunePartSize = false;
+    private boolean verifyDownload = false;
+    private boolean deltaDownload = false;
+    /**
+     * Number of received chunks that may wait to be written, 0 writes them directly
+     */
+    private int downloadReadAhead = 4;
+    /**
+     * Maximum memory in MB used by received chunks that wait to be written
+     */
+    private int downloadMemoryLimit = 256;
+    /**
+     * Tuned download part size per data source (unique id)
+     */
+    private Map<String, Long> partSizes = new HashMap<>();
+    /**
+     * Last measured download speed in bytes per second per data source (unique id)
+     */
+    private Map<String, Long> downloadSpeeds = new HashMap<>();
+    /**
+     * Download speed limit in bytes per second per data source (unique id), missing or 0 for unlimited
+     */
+    private Map<String, Long> downloadRateLimits = new HashMap<>();
+    /**
+     * Default backup settings per data source (unique id), see BackupProfile
+     */
+    private Map<String, String> backupProfiles = new HashMap<>();
+    private List<BackupSchedule> backupSchedules = new ArrayList<>();
+    /**
+     * Results of the last verified backups, newest first
+     */
+    private List<VerificationResult> verificationHistory = new ArrayList<>();
 
     public static AppSettingsState getInstance() {
         return ApplicationManager.getApplication().getService(AppSettingsState.class);
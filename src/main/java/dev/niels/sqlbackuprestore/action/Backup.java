@@ -1,5 +1,6 @@
 package dev.niels.sqlbackuprestore.action;
 
+import com.intellij.database.dialects.mssql.model.MsDatabase;
 import com.intellij.notification.Notification;
 import com.intellij.notification.NotificationType;
 import com.intellij.notification.Notifications.Bus;
@@ -7,20 +8,39 @@ import com.intellij.openapi.actionSystem.ActionUpdateThread;
 import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.project.DumbAwareAction;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import dev.niels.sqlbackuprestore.AppSettingsState;
 import dev.niels.sqlbackuprestore.Constants;
+import dev.niels.sqlbackuprestore.backup.BackupDevice;
+import dev.niels.sqlbackuprestore.backup.BackupMode;
+import dev.niels.sqlbackuprestore.backup.BackupProfile;
+import dev.niels.sqlbackuprestore.backup.DifferentialBase;
+import dev.niels.sqlbackuprestore.backup.FilegroupSelection;
+import dev.niels.sqlbackuprestore.backup.SpaceCheck;
+import dev.niels.sqlbackuprestore.backup.TransferOptions;
+import dev.niels.sqlbackuprestore.backup.Verification;
 import dev.niels.sqlbackuprestore.query.Auditor.MessageType;
 import dev.niels.sqlbackuprestore.query.Client;
 import dev.niels.sqlbackuprestore.query.ProgressTask;
 import dev.niels.sqlbackuprestore.query.QueryHelper;
+import dev.niels.sqlbackuprestore.ui.BackupStripesDialog;
 import dev.niels.sqlbackuprestore.ui.filedialog.FileDialog;
 import dev.niels.sqlbackuprestore.ui.filedialog.RemoteFile;
 import lombok.extern.slf4j.Slf4j;
+import one.util.streamex.EntryStream;
+import one.util.streamex.StreamEx;
 import org.apache.commons.lang3.StringUtils;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Backup database to a file
@@ -45,7 +65,12 @@ public class Backup extends DumbAwareAction {
         ApplicationManager.getApplication().invokeLater(() -> {
             try (var c = QueryHelper.client(e)) {
                 c.setTitle("Backup database");
-                backup(e, c);
+                var databases = QueryHelper.getDatabases(e);
+                if (databases.size() > 1) {
+                    backupAll(e, c, StreamEx.of(databases).map(MsDatabase::getName).toList());
+                } else {
+                    backup(e, c, true);
+                }
             }
         });
     }
@@ -55,6 +80,13 @@ public class Backup extends DumbAwareAction {
         e.getPresentation().setEnabled(QueryHelper.getDatabase(e).isPresent());
     }
 
+    /**
+     * The kind of backup this action makes
+     */
+    protected BackupMode getMode() {
+        return BackupMode.FULL;
+    }
+
     /**
      * Asks for a (remote) file and backs the selected database up to that file.
      * Must be called on the event thread.
@@ -64,33 +96,132 @@ public class Backup extends DumbAwareAction {
      * @return a pair of the connection that should be closed and the file that was being selected. The original connection and null if no file was selected.
      */
     protected CompletableFuture<RemoteFile> backup(@NotNull AnActionEvent e, Client c) {
+        return backup(e, c, false);
+    }
+
+    /**
+     * @param allowStripes when striped backups are enabled, ask for the stripes. Only when the caller doesn't need
+     *                     the backup as a single file.
+     * @see #backup(AnActionEvent, Client)
+     */
+    protected CompletableFuture<RemoteFile> backup(@NotNull AnActionEvent e, Client c, boolean allowStripes) {
         var database = QueryHelper.getDatabase(e);
         if (database.isEmpty()) {
             return CompletableFuture.completedFuture(null);
         }
 
         var name = database.get().getName();
-        var target = FileDialog.saveFile(name + ".bak", e.getProject(), c, "Backup " + database.get() + " to file");
+        // Taken over until the backup is started or cancelled, the checks query the server in the background
+        c.open();
+        return determineMode(e, c, name)
+                .thenCompose(plan -> plan == null ? CompletableFuture.<Plan>completedFuture(null) : chooseFilegroups(e, c, name).thenApply(plan::withFilegroups))
+                .thenApplyAsync(plan -> plan == null ? null : choose(e, c, "Backup " + database.get() + " to file", plan, allowStripes), Util.EDT)
+                .thenCompose(plan -> plan == null ? CompletableFuture.<Plan>completedFuture(null) : prepareTarget(c, plan.target()).thenApply(ready -> ready ? plan : null))
+                .thenApplyAsync(plan -> plan != null && fits(e, c, name, plan) ? plan : null, AppExecutorUtil.getAppExecutorService())
+                .handle((plan, t) -> {
+                    if (t != null) {
+                        log.warn("Unable to prepare the backup of {}", name, t);
+                    }
+                    if (t != null || plan == null) {
+                        c.close();
+                        return null;
+                    }
+                    return plan;
+                })
+                .thenComposeAsync(plan -> plan == null ? CompletableFuture.<RemoteFile>completedFuture(null) : start(e, c, name, plan), Util.EDT);
+    }
+
+    /**
+     * The kind of backup and its default file name, a differential backup without a base can be made a base instead.
+     *
+     * @return the plan without the target, null when cancelled
+     */
+    private CompletableFuture<Plan> determineMode(@NotNull AnActionEvent e, Client c, String name) {
+        var mode = getMode();
+        if (mode == BackupMode.DIFFERENTIAL) {
+            return findDifferentialBase(c, name).thenApplyAsync(base -> {
+                if (base != null) {
+                    return new Plan(mode, base.fileName(name));
+                }
+                if (Messages.showDialog(e.getProject(),
+                        "There is no full backup of " + name + " that a differential backup can be based on (copy-only backups can't be a base). Do you want to make a full backup that future differential backups are based on instead?",
+                        "No Base Backup",
+                        new String[]{"Make Full Backup", "Cancel"},
+                        1,
+                        Messages.getWarningIcon()) == 0) {
+                    return new Plan(BackupMode.BASE, BackupMode.BASE.fileName(name));
+                }
+                return null;
+            }, Util.EDT);
+        } else if (mode == BackupMode.LOG) {
+            return isLogBackupPossible(c, name).thenApply(possible -> possible ? new Plan(mode, mode.fileName(name)) : null);
+        }
+        return CompletableFuture.completedFuture(new Plan(mode, mode.fileName(name)));
+    }
+
+    /**
+     * Ask where the backup is written to, on the event thread.
+     *
+     * @return the complete plan, null when cancelled
+     */
+    private @Nullable Plan choose(@NotNull AnActionEvent e, Client c, String title, Plan plan, boolean allowStripes) {
+        var target = chooseTarget(e, c, plan.fileName(), title);
         if (target == null) {
-            return CompletableFuture.completedFuture(null);
+            return null;
         }
+        var stripes = allowStripes ? determineStripes(e, c, target) : List.of(target.getPath());
+        if (stripes == null) {
+            return null;
+        }
+        return new Plan(plan.mode(), plan.fileName(), plan.filegroups(), target, stripes);
+    }
 
-        c.open();
+    /**
+     * Check the free space in the background, the problem is shown on the event thread.
+     */
+    private boolean fits(@NotNull AnActionEvent e, Client c, String name, Plan plan) {
+        var problem = checkSpace(c, name, plan.mode(), plan.stripes(), plan.filegroups());
+        if (problem != null) {
+            ApplicationManager.getApplication().invokeLater(() -> Messages.showErrorDialog(e.getProject(), problem, "Not Enough Space"));
+        }
+        return problem == null;
+    }
+
+    /**
+     * Start the backup on the connection, which was opened for it.
+     */
+    private CompletableFuture<RemoteFile> start(@NotNull AnActionEvent e, Client c, String name, Plan plan) {
+        var mode = plan.mode();
+        var target = plan.target();
+        var stripes = plan.stripes();
+        var filegroups = plan.filegroups();
         c.setTitle("Backup " + name);
 
-        var future = determineCompression(c)
-                .thenCompose(compress -> c.execute("BACKUP DATABASE [" + name + "] TO  DISK = N'" + target.getPath() + "' WITH COPY_ONLY, NOFORMAT, INIT, SKIP, NOREWIND, NOUNLOAD" + compress + ", STATS = 10"))
+        // Both are requested before the backup is queued on the session
+        var sessionId = ProgressTask.sessionId(c);
+        var size = SpaceCheck.estimate(c, name, mode, false, filegroups).exceptionally(ex -> 0L);
+        var future = backupStatement(c, name, mode, stripes, filegroups)
+                .thenCompose(c::execute)
                 .thenApply(c::closeAndReturn)
                 .exceptionally(c::close)
                 .thenCompose(x -> c.getSingle(String.format("USE [%s] exec sp_spaceused @oneresultset = 1", name), "reserved", String.class)
                         .thenApply(kb -> Long.parseLong(StringUtils.removeEnd(kb, " KB")) * 1024)
                         .thenApply(target::setLength));
 
+        var failed = new AtomicBoolean();
         c.addWarningConsumer((type, msg) -> {
             if (type == MessageType.ERROR) {
+                failed.set(true);
                 Bus.notify(new Notification(Constants.NOTIFICATION_GROUP, "Error occurred", msg, NotificationType.ERROR));
             }
         });
+        if (AppSettingsState.getInstance().isVerifyBackup()) {
+            future.thenRun(() -> {
+                if (!failed.get()) {
+                    Verification.verify(e.getProject(), c, name, stripes);
+                }
+            });
+        }
 
         new ProgressTask(e.getProject(), "Creating backup", false, consumer -> {
             c.addWarningConsumer(consumer);
@@ -99,20 +230,219 @@ public class Backup extends DumbAwareAction {
             } catch (Exception ex) {
                 // Don't really care ;)
             }
-        }).queue();
+        }).poll(c, sessionId, () -> size.getNow(0L)).queue();
         return future;
     }
 
-    private CompletableFuture<String> determineCompression(Client c) {
-        if (!AppSettingsState.getInstance().isUseCompressedBackup()) {
+    /**
+     * The BACKUP statement for the database, with the compression and transfer options of the data source.
+     */
+    public static CompletableFuture<String> backupStatement(Client c, String name, BackupMode mode, List<String> stripes) {
+        return backupStatement(c, name, mode, stripes, FilegroupSelection.DATABASE);
+    }
+
+    /**
+     * @param filegroups the part of the database that is backed up, only for database backups
+     * @see #backupStatement(Client, String, BackupMode, List)
+     */
+    public static CompletableFuture<String> backupStatement(Client c, String name, BackupMode mode, List<String> stripes, FilegroupSelection filegroups) {
+        var backup = "BACKUP " + mode.getStatement() + " [" + name + "]" + filegroups.clause();
+        var devices = BackupDevice.of(stripes);
+        var checksum = AppSettingsState.getInstance().isVerifyBackup() ? ", CHECKSUM" : "";
+        if (BackupDevice.isUrl(stripes.get(0))) {
+            // Objects can't be appended to and the transfer size is the size of the uploaded parts
+            var partSize = AppSettingsState.getInstance().getS3PartSize() * 1024 * 1024;
+            return determineCompression(c)
+                    .thenApply(compress -> backup + " TO " + devices + " WITH " + mode.getOptions() + "FORMAT" + compress + ", MAXTRANSFERSIZE = " + partSize + checksum + ", STATS = 10");
+        }
+
+        // A new media set must be formatted when it has more than one file
+        var format = stripes.size() > 1 ? "FORMAT" : "NOFORMAT";
+        return determineCompression(c)
+                .thenCombine(determineTransferOptions(c, name, stripes.size()), (compress, transfer) -> compress + transfer)
+                .thenApply(options -> backup + " TO  " + devices + " WITH " + mode.getOptions() + format + ", INIT, SKIP, NOREWIND, NOUNLOAD" + options + checksum + ", STATS = 10");
+    }
+
+    /**
+     * Estimate the size of the backup before it starts, a backup that doesn't fit would only fail after reading the
+     * whole database.
+     *
+     * @return why the backup doesn't fit, null when it fits or when it couldn't be determined
+     */
+    public static @Nullable String checkSpace(Client c, String name, BackupMode mode, List<String> stripes) {
+        return checkSpace(c, name, mode, stripes, FilegroupSelection.DATABASE);
+    }
+
+    /**
+     * @param filegroups the part of the database that is backed up
+     * @see #checkSpace(Client, String, BackupMode, List)
+     */
+    public static @Nullable String checkSpace(Client c, String name, BackupMode mode, List<String> stripes, FilegroupSelection filegroups) {
+        if (BackupDevice.isUrl(stripes.get(0))) {
+            return null;
+        }
+        try {
+            var compressed = !determineCompression(c).get(10, TimeUnit.SECONDS).isEmpty();
+            return SpaceCheck.check(c, name, mode, compressed, stripes, filegroups);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException ex) {
+            log.warn("Unable to determine whether the backup of {} is compressed", name, ex);
+        }
+        return null;
+    }
+
+    /**
+     * Backup all selected databases to one directory, see BatchBackup.
+     */
+    private void backupAll(@NotNull AnActionEvent e, Client c, List<String> databases) {
+        var directory = FileDialog.chooseDirectory(e.getProject(), c, "Backup " + databases.size() + " databases to directory");
+        if (directory == null) {
+            return;
+        }
+        new BatchBackup(e.getProject(), c, getMode(), databases, directory.getPath()).queue();
+    }
+
+    /**
+     * The log can only be backed up when the database doesn't use the simple recovery model. When the recovery model
+     * can't be determined the backup is attempted anyway.
+     */
+    private CompletableFuture<Boolean> isLogBackupPossible(Client c, String database) {
+        return c.<String>getSingle("select recovery_model_desc AS model from sys.databases where name = N'" + database + "'", "model")
+                .orTimeout(10, TimeUnit.SECONDS)
+                .handle((model, ex) -> {
+                    if (ex != null) {
+                        log.warn("Unable to determine the recovery model of {}", database, ex);
+                        return true;
+                    }
+                    if ("SIMPLE".equalsIgnoreCase(model)) {
+                        Bus.notify(new Notification(Constants.NOTIFICATION_GROUP, Constants.ERROR, database + " uses the simple recovery model, the transaction log can't be backed up", NotificationType.ERROR));
+                        return false;
+                    }
+                    return true;
+                });
+    }
+
+    /**
+     * The base of a differential backup, null when there is no base or it couldn't be determined.
+     */
+    private CompletableFuture<DifferentialBase> findDifferentialBase(Client c, String database) {
+        return DifferentialBase.find(c, database)
+                .orTimeout(10, TimeUnit.SECONDS)
+                .exceptionally(ex -> {
+                    log.warn("Unable to determine the differential base of {}", database, ex);
+                    return null;
+                });
+    }
+
+    /**
+     * Ask for the part of the database that is backed up, the whole database by default. Dialogs must be shown on the
+     * event thread, the future is not completed on it.
+     *
+     * @return completes with the filegroups, null when cancelled
+     */
+    protected CompletableFuture<FilegroupSelection> chooseFilegroups(@NotNull AnActionEvent e, Client c, String database) {
+        return CompletableFuture.completedFuture(FilegroupSelection.DATABASE);
+    }
+
+    /**
+     * Ask for the file the backup is written to.
+     *
+     * @return the file, null when cancelled
+     */
+    protected @Nullable RemoteFile chooseTarget(@NotNull AnActionEvent e, Client c, String fileName, String title) {
+        return FileDialog.saveFile(fileName, e.getProject(), c, title);
+    }
+
+    /**
+     * Prepare the server for writing to the chosen target, before the backup starts.
+     *
+     * @return completes with whether the backup can be made
+     */
+    protected CompletableFuture<Boolean> prepareTarget(Client c, RemoteFile target) {
+        return CompletableFuture.completedFuture(true);
+    }
+
+    /**
+     * Ask for the stripes when striped backups are enabled. The stripes are named after the chosen file.
+     *
+     * @return the paths of the stripes, null when cancelled
+     */
+    protected @Nullable List<String> determineStripes(@NotNull AnActionEvent e, Client c, RemoteFile target) {
+        var settings = AppSettingsState.getInstance();
+        if (!settings.isStripedBackup()) {
+            return List.of(target.getPath());
+        }
+
+        var parent = target.getParent() == null ? "" : target.getParent().getPath();
+        var profile = BackupProfile.of(c);
+        var directories = BackupStripesDialog.choose(e.getProject(), c, profile != null ? profile.stripes() : settings.getBackupStripes(), parent);
+        if (directories == null) {
+            return null;
+        }
+        settings.setBackupStripes(directories.size());
+        if (directories.size() == 1) {
+            return List.of(target.getPath());
+        }
+
+        var separator = target.getPath().contains("/") && !target.getPath().contains("\\") ? "/" : "\\";
+        var base = StringUtils.substringBeforeLast(target.getName(), ".");
+        var extension = target.getName().contains(".") ? "." + StringUtils.substringAfterLast(target.getName(), ".") : ".bak";
+        return EntryStream.of(directories)
+                .mapKeyValue((i, directory) -> StringUtils.stripEnd(directory, "/\\") + separator + base + "_" + (i + 1) + "of" + directories.size() + extension)
+                .toList();
+    }
+
+    /**
+     * Transfer options of the default profile of the data source, or based on the size of the database when tuning is
+     * enabled.
+     */
+    private static CompletableFuture<String> determineTransferOptions(Client c, String database, int stripes) {
+        var profile = BackupProfile.of(c);
+        if (profile != null) {
+            return CompletableFuture.completedFuture(profile.getTransferOptions().toSql());
+        }
+        if (!AppSettingsState.getInstance().isTuneBackupTransfer()) {
+            return CompletableFuture.completedFuture("");
+        }
+        return TransferOptions.databaseSize(c, database)
+                .thenApply(size -> size == null ? "" : TransferOptions.forSize(size, stripes).toSql());
+    }
+
+    /**
+     * Compress when the default profile of the data source says so, otherwise when compressed backups are enabled.
+     */
+    private static CompletableFuture<String> determineCompression(Client c) {
+        var profile = BackupProfile.of(c);
+        if (profile != null ? !profile.compression() : !AppSettingsState.getInstance().isUseCompressedBackup()) {
             return CompletableFuture.completedFuture("");
         }
+        return supportsCompression(c)
+                .thenApply(compress -> compress ? ", COMPRESSION" : "");
+    }
+
+    static CompletableFuture<Boolean> supportsCompression(Client c) {
         return c.<String>getSingle("SELECT cast(SERVERPROPERTY('EditionID') as varchar(20)) AS edition", "edition") // EditionID is supposed to be a bigint but returns as String. Cast to be super sure.
                 .thenApply(id -> {
                     var result = !editionIdsWithoutCompressionSupport.contains(id);
                     log.info("Version {} does {}support compression", id, result ? "" : "not ");
                     return result;
-                })
-                .thenApply(compress -> compress ? ", COMPRESSION" : "");
+                });
+    }
+
+    /**
+     * What the backup is written to, chosen before it starts.
+     */
+    private record Plan(BackupMode mode, String fileName, @Nullable FilegroupSelection filegroups, @Nullable RemoteFile target, @Nullable List<String> stripes) {
+        Plan(BackupMode mode, String fileName) {
+            this(mode, fileName, null, null, null);
+        }
+
+        /**
+         * @return null when cancelled
+         */
+        @Nullable Plan withFilegroups(@Nullable FilegroupSelection filegroups) {
+            return filegroups == null ? null : new Plan(mode, fileName, filegroups, target, stripes);
+        }
     }
 }
@@ -0,0 +1,87 @@
+package dev.niels.sqlbackuprestore.action;
+
+import com.intellij.notification.Notification;
+import com.intellij.notification.NotificationType;
+import com.intellij.notification.Notifications.Bus;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.application.ApplicationManager;
+import dev.niels.sqlbackuprestore.AppSettingsState;
+import dev.niels.sqlbackuprestore.Constants;
+import dev.niels.sqlbackuprestore.backup.S3Credentials;
+import dev.niels.sqlbackuprestore.backup.S3Location;
+import dev.niels.sqlbackuprestore.query.Client;
+import dev.niels.sqlbackuprestore.query.QueryHelper;
+import dev.niels.sqlbackuprestore.ui.S3Dialog;
+import dev.niels.sqlbackuprestore.ui.filedialog.DatabaseFileSystem;
+import dev.niels.sqlbackuprestore.ui.filedialog.RemoteFile;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Backup to S3 compatible storage with BACKUP TO URL (SQL2022+), the upload is done by the server
+ */
+@Slf4j
+public class BackupToS3 extends Backup {
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        ApplicationManager.getApplication().invokeLater(() -> {
+            try (var c = QueryHelper.client(e)) {
+                c.setTitle("Backup database to S3");
+                backup(e, c, true);
+            }
+        });
+    }
+
+    @Override
+    protected @Nullable RemoteFile chooseTarget(@NotNull AnActionEvent e, Client c, String fileName, String title) {
+        var location = S3Dialog.saveFile(e.getProject(), fileName, title.replace("to file", "to S3"));
+        if (location == null) {
+            return null;
+        }
+        return (RemoteFile) new DatabaseFileSystem(c).findFileByPath(location.url());
+    }
+
+    @Override
+    protected CompletableFuture<Boolean> prepareTarget(Client c, RemoteFile target) {
+        return applyCredential(c, S3Location.parse(target.getPath()));
+    }
+
+    /**
+     * The URLs are named after the chosen object like striped backups to files.
+     */
+    @Override
+    protected @Nullable List<String> determineStripes(@NotNull AnActionEvent e, Client c, RemoteFile target) {
+        var stripes = AppSettingsState.getInstance().getS3Stripes();
+        if (stripes <= 1) {
+            return List.of(target.getPath());
+        }
+        var base = StringUtils.substringBeforeLast(target.getPath(), ".");
+        var extension = target.getName().contains(".") ? "." + StringUtils.substringAfterLast(target.getName(), ".") : ".bak";
+        return IntStream.rangeClosed(1, stripes).mapToObj(i -> base + "_" + i + "of" + stripes + extension).toList();
+    }
+
+    /**
+     * Create or update the server credential for the bucket, the error is notified.
+     *
+     * @return completes with whether the credential was applied
+     */
+    static CompletableFuture<Boolean> applyCredential(Client c, S3Location location) {
+        return S3Credentials.apply(c, location)
+                .orTimeout(10, TimeUnit.SECONDS)
+                .handle((x, ex) -> {
+                    if (ex == null) {
+                        return true;
+                    }
+                    log.warn("Unable to create the credential for {}", location.credentialName(), ex);
+                    Bus.notify(new Notification(Constants.NOTIFICATION_GROUP, Constants.ERROR, "Unable to create the server credential for " + location.credentialName() + ":\n" + ex.getMessage(), NotificationType.ERROR));
+                    return false;
+                });
+    }
+}
@@ -0,0 +1,126 @@
+package dev.niels.sqlbackuprestore.action;
+
+import com.intellij.notification.Notification;
+import com.intellij.notification.NotificationType;
+import com.intellij.notification.Notifications.Bus;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task.Backgroundable;
+import com.intellij.openapi.project.Project;
+import dev.niels.sqlbackuprestore.AppSettingsState;
+import dev.niels.sqlbackuprestore.Constants;
+import dev.niels.sqlbackuprestore.backup.BackupMode;
+import dev.niels.sqlbackuprestore.backup.BackupQueue;
+import dev.niels.sqlbackuprestore.backup.Verification;
+import dev.niels.sqlbackuprestore.query.Auditor.MessageType;
+import dev.niels.sqlbackuprestore.query.Client;
+import dev.niels.sqlbackuprestore.query.ProgressTask;
+import dev.niels.sqlbackuprestore.query.QueryHelper;
+import one.util.streamex.EntryStream;
+import one.util.streamex.StreamEx;
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Backs up multiple databases of one server into a directory. Every database is backed up on its own session through
+ * the BackupQueue of the server, the progress is shown for all databases together.
+ */
+class BatchBackup extends Backgroundable {
+    private final Client connection;
+    private final BackupMode mode;
+    private final List<String> databases;
+    private final String directory;
+    /**
+     * Percentage done of the databases that started
+     */
+    private final Map<String, Integer> progress = new ConcurrentHashMap<>();
+    private final Map<String, String> errors = new ConcurrentHashMap<>();
+    /**
+     * Verifications run next to the backups that follow, they don't take a place in the queue
+     */
+    private final List<CompletableFuture<Boolean>> verifications = new CopyOnWriteArrayList<>();
+
+    BatchBackup(@Nullable Project project, Client connection, BackupMode mode, List<String> databases, String directory) {
+        super(project, "Backing up " + databases.size() + " databases", true);
+        this.connection = connection;
+        this.mode = mode;
+        this.databases = databases;
+        this.directory = directory;
+    }
+
+    @Override
+    public void run(@NotNull ProgressIndicator indicator) {
+        indicator.setIndeterminate(false);
+        indicator.setFraction(0.0);
+
+        var queue = BackupQueue.of(connection);
+        var backups = StreamEx.of(databases)
+                .map(database -> queue.submit(() -> indicator.isCanceled() ? CompletableFuture.completedFuture(null) : backup(indicator, database))
+                        .exceptionally(ex -> {
+                            errors.put(database, ex.getMessage());
+                            return null;
+                        }))
+                .toList();
+        CompletableFuture.allOf(backups.toArray(CompletableFuture[]::new)).join();
+        if (!verifications.isEmpty()) {
+            indicator.setText2("Waiting for " + verifications.size() + " verifications");
+            CompletableFuture.allOf(verifications.toArray(CompletableFuture[]::new)).join();
+        }
+
+        if (errors.isEmpty()) {
+            var done = indicator.isCanceled() ? progress.size() + " of " + databases.size() : "All " + databases.size();
+            Bus.notify(new Notification(Constants.NOTIFICATION_GROUP, "Backups created", done + " databases were backed up to " + directory, NotificationType.INFORMATION));
+        } else {
+            var failed = EntryStream.of(errors).join(": ").joining("\n");
+            Bus.notify(new Notification(Constants.NOTIFICATION_GROUP, Constants.ERROR, errors.size() + " of " + databases.size() + " backups failed:\n" + failed, NotificationType.ERROR));
+        }
+    }
+
+    private CompletableFuture<Object> backup(ProgressIndicator indicator, String database) {
+        var c = QueryHelper.client(connection);
+        c.setTitle("Backup " + database);
+        progress.put(database, 0);
+        update(indicator);
+        c.addWarningConsumer((type, msg) -> {
+            if (type == MessageType.ERROR) {
+                errors.putIfAbsent(database, msg);
+            }
+            ProgressTask.percent(type, msg).ifPresent(p -> {
+                progress.put(database, p);
+                update(indicator);
+            });
+        });
+
+        var path = path(database);
+        return Backup.backupStatement(c, database, mode, List.of(path))
+                .thenCompose(c::execute)
+                .thenApply(x -> {
+                    progress.put(database, 100);
+                    update(indicator);
+                    if (AppSettingsState.getInstance().isVerifyBackup() && !errors.containsKey(database)) {
+                        verifications.add(Verification.verify(getProject(), c, database, List.of(path)));
+                    }
+                    return null;
+                })
+                .whenComplete((x, ex) -> c.close());
+    }
+
+    private String path(String database) {
+        var separator = directory.contains("/") && !directory.contains("\\") ? "/" : "\\";
+        return StringUtils.stripEnd(directory, "/\\") + separator + mode.fileName(database);
+    }
+
+    private void update(ProgressIndicator indicator) {
+        var running = EntryStream.of(progress).filterValues(p -> p < 100).keys().joining(", ");
+        var done = EntryStream.of(progress).filterValues(p -> p >= 100).count();
+        indicator.setFraction(StreamEx.of(progress.values()).mapToInt(Integer::intValue).sum() / (100d * databases.size()));
+        indicator.setText(String.format("%s: %s of %s done", getTitle(), done, databases.size()));
+        indicator.setText2(running);
+    }
+}
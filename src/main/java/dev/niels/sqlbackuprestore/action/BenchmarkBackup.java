@@ -0,0 +1,62 @@
+package dev.niels.sqlbackuprestore.action;
+
+import com.intellij.notification.Notification;
+import com.intellij.notification.NotificationType;
+import com.intellij.notification.Notifications.Bus;
+import com.intellij.openapi.actionSystem.ActionUpdateThread;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.DumbAwareAction;
+import com.intellij.openapi.ui.Messages;
+import dev.niels.sqlbackuprestore.Constants;
+import dev.niels.sqlbackuprestore.backup.Benchmark;
+import dev.niels.sqlbackuprestore.query.QueryHelper;
+import dev.niels.sqlbackuprestore.ui.BenchmarkDialog;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Runs backups to the NUL device with different settings to find the fastest settings for the data source
+ */
+public class BenchmarkBackup extends DumbAwareAction {
+    @Override
+    public @NotNull ActionUpdateThread getActionUpdateThread() {
+        return ActionUpdateThread.BGT;
+    }
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        var database = QueryHelper.getDatabase(e);
+        if (database.isEmpty()) {
+            return;
+        }
+        var name = database.get().getName();
+        if (Messages.YES != Messages.showYesNoDialog(e.getProject(),
+                "The benchmark backs up " + name + " to the NUL device for up to 20 seconds with each of a number of settings. Continue?",
+                "Benchmark Backup",
+                Messages.getQuestionIcon())) {
+            return;
+        }
+
+        try (var c = QueryHelper.client(e)) {
+            c.open();
+            c.setTitle("Benchmark backup of " + name);
+            Backup.supportsCompression(c).thenAccept(compression -> ApplicationManager.getApplication().invokeLater(() ->
+                    new Benchmark(e.getProject(), c, name, compression, results -> ApplicationManager.getApplication().invokeLater(() -> {
+                        if (results.isEmpty()) {
+                            Bus.notify(new Notification(Constants.NOTIFICATION_GROUP, Constants.ERROR, "The benchmark of " + name + " did not produce any results", NotificationType.WARNING));
+                            return;
+                        }
+                        var best = BenchmarkDialog.show(e.getProject(), name, results);
+                        if (best != null) {
+                            best.save(c);
+                        }
+                    })).queue()))
+                    .exceptionally(c::close);
+        }
+    }
+
+    @Override
+    public void update(@NotNull AnActionEvent e) {
+        e.getPresentation().setEnabled(QueryHelper.getDatabase(e).isPresent());
+    }
+}
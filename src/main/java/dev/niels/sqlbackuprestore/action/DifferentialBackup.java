@@ -0,0 +1,13 @@
+package dev.niels.sqlbackuprestore.action;
+
+import dev.niels.sqlbackuprestore.backup.BackupMode;
+
+/**
+ * Backup the extents that changed since the last full backup that is the differential base of the database
+ */
+public class DifferentialBackup extends Backup {
+    @Override
+    protected BackupMode getMode() {
+        return BackupMode.DIFFERENTIAL;
+    }
+}
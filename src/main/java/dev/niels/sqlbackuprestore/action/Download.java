@@ -1,7 +1,6 @@
 package dev.niels.sqlbackuprestore.action;
 
 import com.intellij.database.model.DasObject;
-import com.intellij.database.remote.jdbc.RemoteBlob;
 import com.intellij.ide.util.PropertiesComponent;
 import com.intellij.notification.Notification;
 import com.intellij.notification.NotificationType;
@@ -11,14 +10,17 @@ import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.fileChooser.FileChooserFactory;
 import com.intellij.openapi.fileChooser.FileSaverDescriptor;
-import com.intellij.openapi.progress.ProgressIndicator;
-import com.intellij.openapi.progress.Task.Backgroundable;
 import com.intellij.openapi.project.DumbAwareAction;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import dev.niels.sqlbackuprestore.AppSettingsState;
 import dev.niels.sqlbackuprestore.Constants;
+import dev.niels.sqlbackuprestore.download.Compression;
+import dev.niels.sqlbackuprestore.download.CompressionEstimate;
+import dev.niels.sqlbackuprestore.download.DownloadManifest;
+import dev.niels.sqlbackuprestore.download.DownloadSource;
+import dev.niels.sqlbackuprestore.download.DownloadTask;
 import dev.niels.sqlbackuprestore.query.Client;
 import dev.niels.sqlbackuprestore.query.QueryHelper;
 import dev.niels.sqlbackuprestore.ui.filedialog.FileDialog;
@@ -28,18 +30,18 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.sql.SQLException;
 import java.util.Objects;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Triggers backup and then allows downloading the result
  */
+@Slf4j
 public class Download extends DumbAwareAction {
+    private static final long MIN_SECONDS_SAVED = 10;
     @Override
     public @NotNull ActionUpdateThread getActionUpdateThread() {
         return ActionUpdateThread.BGT;
@@ -56,37 +58,54 @@ public class Download extends DumbAwareAction {
                             c.close();
                             return;
                         }
-
-                        AtomicBoolean compressed = new AtomicBoolean(false);
-                        ApplicationManager.getApplication().invokeAndWait(() -> compressed.set(askCompress(e.getProject(), source.getLength())));
-                        var col = compressed.get() ? "COMPRESS(BulkColumn)" : "BulkColumn";
-
-                        c.execute("SELECT 1 as id, CAST(0 as bigint) AS fs, " + col + " AS f into #filedownload FROM OPENROWSET(BULK N'" + source.getPath() + "', SINGLE_BLOB) x;")
-                                .thenCompose(x -> c.execute("update #filedownload set fs = LEN(f) where id = 1;"))
-                                .thenRun(() -> ApplicationManager.getApplication().invokeLater(() -> {
-                                    var name = source.getName() + (compressed.get() ? ".gzip" : "");
-                                    var target = getFile(e, name);
-                                    if (target == null) {
-                                        c.close();
-                                        return;
-                                    }
-                                    if (compressed.get() && !StringUtils.endsWithIgnoreCase(target.getAbsolutePath(), ".gzip")) {
-                                        target = new File(target.getAbsolutePath() + ".gzip");
-                                    }
-                                    new DownloadTask(e.getProject(), c, source.getPath(), target).queue();
-                                }));
+                        download(e, c, source.getPath(), source.getName(), source.getLength());
                     })
             );
         }
     }
 
+    /**
+     * Asks how to compress and where to store the file and downloads it. Must not be called on the event thread.
+     *
+     * @param c    the connection that is used for the download, it is taken over and closed when the download finishes
+     * @param path the path of the file on the server
+     * @param name the default name of the local file
+     * @param size the size to show when asking for compression, null if unknown
+     */
+    protected void download(@NotNull AnActionEvent e, Client c, String path, String name, @Nullable Long size) {
+        var estimate = shouldAskCompress(size) ? estimateCompression(c, path) : null;
+        AtomicReference<Compression> compression = new AtomicReference<>(Compression.NONE);
+        ApplicationManager.getApplication().invokeAndWait(() -> compression.set(askCompress(e.getProject(), path, size, estimate)));
+        var compressed = compression.get().isCompressed();
+        var downloadSource = DownloadSource.of(path, compression.get());
+
+        downloadSource.prepare(c)
+                .thenRun(() -> ApplicationManager.getApplication().invokeLater(() -> {
+                    var target = getFile(e, name + (compressed ? ".gzip" : ""));
+                    if (target == null) {
+                        c.close();
+                        return;
+                    }
+                    if (compressed && !StringUtils.endsWithIgnoreCase(target.getAbsolutePath(), ".gzip")) {
+                        target = new File(target.getAbsolutePath() + ".gzip");
+                    }
+                    new DownloadTask(e.getProject(), c, downloadSource, new DownloadManifest(target, c.getDataSource().getUniqueId(), path, compression.get())).queue();
+                }))
+                .exceptionally(ex -> {
+                    log.warn("Unable to prepare the download of {}", path, ex);
+                    Bus.notify(new Notification(Constants.NOTIFICATION_GROUP, Constants.ERROR, "Unable to prepare the download of " + path + ":\n" + ex.getMessage(), NotificationType.ERROR));
+                    return c.close(ex);
+                });
+    }
+
     @Nullable
     private File getFile(@NotNull AnActionEvent e, String fileName) {
         var property = PropertiesComponent.getInstance(Objects.requireNonNull(e.getProject())).getValue(FileDialog.KEY_PREFIX + "download");
         var path = property == null ? null : LocalFileSystem.getInstance().findFileByPath(property);
 
         if (AppSettingsState.getInstance().isUseDbNameOnDownload()) {
-            fileName = QueryHelper.getDatabase(e).map(DasObject::getName).orElse(null) + ".bak";
+            // Downloading an existing file doesn't need a selected database, keep the name of the file then
+            fileName = QueryHelper.getDatabase(e).map(DasObject::getName).map(n -> n + ".bak").orElse(fileName);
         }
         var wrapper = FileChooserFactory.getInstance().createSaveFileDialog(new FileSaverDescriptor("Choose Local File", "Where to store the downloaded file"), e.getProject()).save(path, fileName);
         if (wrapper == null) {
@@ -107,137 +126,67 @@ public class Download extends DumbAwareAction {
         }
     }
 
-    private boolean askCompress(Project project, Long size) {
-        var compressed = AppSettingsState.getInstance().isUseCompressedBackup();
+    private boolean shouldAskCompress(@Nullable Long size) {
         var askWhen = AppSettingsState.getInstance().getCompressionSize() * 1024 * 1024;
-        if (size == null || askWhen <= size) {
-            var message = compressed ? "The original database was %s before compression. Do you want to apply additional compression before downloading?"
-                    : "The database size is %s, do you want to compress the file before downloading?";
-            return Messages.YES == Messages.showYesNoDialog(project,
-                    String.format(message, size == null ? "?" : Util.humanReadableByteCountSI(size)),
-                    "Compress?",
-                    Messages.getQuestionIcon());
-        }
-        return false;
+        return size == null || askWhen <= size;
     }
 
-    @Slf4j
-    private static class DownloadTask extends Backgroundable {
-        private static final int CHUNK_SIZE = 1024 * 1024;
-        private final Client connection;
-        private final String path;
-        private final File target;
-
-        public DownloadTask(@Nullable Project project, Client connection, String path, File target) {
-            super(project, "Downloading " + path);
-            this.connection = connection;
-            this.path = path;
-            this.target = target;
-        }
-
-        @Override
-        public void run(@NotNull ProgressIndicator indicator) {
-            try (var fos = new FileOutputStream(target)) {
-                indicator.setIndeterminate(false);
-                indicator.setFraction(0.0);
-
-                connection.getSingle("SELECT fs FROM #filedownload", "fs", Long.class)
-                        .thenCompose(s -> download(indicator, fos, s))
-                        .exceptionally(connection::close)
-                        .thenRun(connection::close)
-                        .thenRun(() -> cleanIfCancelled(indicator))
-                        .get();
-            } catch (Exception e) {
-                Bus.notify(new Notification(Constants.NOTIFICATION_GROUP, "Unable to write", "Unable to write to " + path + ":\n" + e.getMessage(), NotificationType.ERROR));
-            }
-        }
-
-        private CompletableFuture<?> download(@NotNull ProgressIndicator indicator, FileOutputStream fos, Long s) {
-            // Split into 100 parts unless the parts are smaller than 1MB
-            var part = Math.max(1_000_000, (long) Math.ceil(s / 100d));
-            var parts = Math.ceil((double) s / part);
-
-            CompletableFuture<?> chain = CompletableFuture.completedFuture(null);
-
-            // Build a chain of part downloads that are executed sequentially
-            AtomicBoolean error = new AtomicBoolean(false);
-            for (var i = 0; i < parts; i++) {
-                var current = i;
-                chain = chain.thenCompose(x -> {
-                    // Allow cancelling and don't proceed if there was an error
-                    if (error.get() || indicator.isCanceled()) {
-                        return CompletableFuture.completedFuture(null);
-                    }
-
-                    // Get the next part and store it
-                    return connection.withRows(String.format("select substring(f, %s, %s) AS part from #filedownload", current * part, part), (cols, rows) -> {
-                        try {
-                            write(fos, rows.get(0).getValue(0));
-                            indicator.setFraction(current / parts);
-                            indicator.setText(String.format("%s: %s/%s", getTitle(), Util.humanReadableByteCountSI(Math.min(s, (current + 1) * part)), Util.humanReadableByteCountSI(s)));
-                        } catch (Exception e) {
-                            Bus.notify(new Notification(Constants.NOTIFICATION_GROUP, "Unable to write", "Unable to write to " + target + ":\n" + e.getMessage(), NotificationType.ERROR));
-                            error.set(true);
-                        }
-                    });
-                });
-            }
-            return chain;
+    /**
+     * Sample the file to see if compressing is worth it, a failing estimate (i.e. COMPRESS is not supported) just
+     * means the question is asked without it. The sample runs on its own session, closing it when the sample takes too
+     * long stops the query instead of letting the download wait behind it.
+     */
+    private @Nullable CompressionEstimate estimateCompression(Client c, String path) {
+        try (var sampler = QueryHelper.client(c)) {
+            return CompressionEstimate.sample(sampler, path).get(30, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException | RuntimeException ex) {
+            log.warn("Unable to estimate the compression of {}", path, ex);
         }
+        return null;
+    }
 
-        /**
-         * Write a single part to the file stream
-         */
-        private void write(FileOutputStream fos, Object blob) throws IOException, SQLException {
-            if (blob instanceof RemoteBlob) {
-                saveBlob(fos, (RemoteBlob) blob);
-            } else if (blob instanceof byte[]) {
-                saveBlob(fos, (byte[]) blob);
-            } else if (blob instanceof String) {
-                saveBlob(fos, (String) blob); // Haven't actually seen this happen...
-            } else {
-                throw new IllegalArgumentException("Unable to download column of type " + blob.getClass().getName());
+    /**
+     * Compressing on the server is a single threaded operation on the complete file before the download can start,
+     * compressing parts on the server starts immediately but compresses every part on its own (SQL2016+),
+     * compressing locally uses all cores of this machine while downloading.
+     */
+    private Compression askCompress(Project project, String path, Long size, @Nullable CompressionEstimate estimate) {
+        if (shouldAskCompress(size)) {
+            if (estimate != null && !estimate.isWorthIt()) {
+                Bus.notify(new Notification(Constants.NOTIFICATION_GROUP, "Not compressing", path + " is downloaded without compression. " + estimate.describe(), NotificationType.INFORMATION));
+                return Compression.NONE;
             }
-        }
 
-        /**
-         * Check if the indicator was cancelled, if so delete the target file.
-         */
-        private void cleanIfCancelled(ProgressIndicator indicator) {
-            if (indicator.isCanceled()) {
-                try {
-                    Files.delete(target.toPath());
-                } catch (IOException e) {
-                    Bus.notify(new Notification(Constants.NOTIFICATION_GROUP, "Delete failure", "Unable to delete " + path + " after cancel:\n" + e.getMessage(), NotificationType.WARNING));
-                }
-            }
-        }
-
-        /**
-         * Write byte array to file
-         */
-        private void saveBlob(FileOutputStream fos, byte[] blob) throws IOException {
-            fos.write(blob);
-        }
-
-        /**
-         * Write RemoteBlob to file
-         */
-        private void saveBlob(FileOutputStream fos, RemoteBlob blob) throws IOException, SQLException {
-            long position = 1;
-            while (position < blob.length()) {
-                fos.write(blob.getBytes(position, CHUNK_SIZE));
-                fos.flush();
-                position += CHUNK_SIZE;
-                position = Math.min(blob.length(), position);
-            }
+            // Preselect not compressing when it would only save a couple of seconds
+            var preselect = estimate != null && estimate.getSavedSeconds() >= 0 && estimate.getSavedSeconds() < MIN_SECONDS_SAVED ? 3 : 2;
+            var choice = Messages.showDialog(project,
+                    compressMessage(AppSettingsState.getInstance().isUseCompressedBackup(), size, estimate),
+                    "Compress?",
+                    new String[]{"Compress on Server", "Compress Parts on Server", "Compress Locally", "Don't Compress"},
+                    preselect,
+                    Messages.getQuestionIcon());
+            return switch (choice) {
+                case 0 -> Compression.SERVER;
+                case 1 -> Compression.SERVER_PARTS;
+                case 2 -> Compression.CLIENT;
+                default -> Compression.NONE;
+            };
         }
+        return Compression.NONE;
+    }
 
-        /**
-         * Write string to file
-         */
-        private void saveBlob(FileOutputStream fos, String blob) throws IOException {
-            saveBlob(fos, blob.getBytes());
+    /**
+     * The question whether to compress, the estimate is appended after formatting because it contains '%' itself.
+     */
+    static String compressMessage(boolean compressedBackup, @Nullable Long size, @Nullable CompressionEstimate estimate) {
+        var message = String.format(compressedBackup ? "The original database was %s before compression. Do you want to apply additional compression before downloading?"
+                        : "The database size is %s, do you want to compress the file before downloading?",
+                size == null ? "?" : Util.humanReadableByteCountSI(size));
+        if (estimate != null) {
+            message += "\n" + estimate.describe();
         }
+        return message;
     }
 }
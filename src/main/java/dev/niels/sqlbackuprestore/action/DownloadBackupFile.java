@@ -0,0 +1,45 @@
+package dev.niels.sqlbackuprestore.action;
+
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.application.ApplicationManager;
+import dev.niels.sqlbackuprestore.AppSettingsState;
+import dev.niels.sqlbackuprestore.download.DownloadSource;
+import dev.niels.sqlbackuprestore.query.QueryHelper;
+import dev.niels.sqlbackuprestore.ui.filedialog.FileDialog;
+import org.apache.commons.lang3.ArrayUtils;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Downloads a backup file that already exists on the server, without making a new backup first
+ */
+public class DownloadBackupFile extends Download {
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        try (var c = QueryHelper.client(e)) {
+            c.open();
+            c.setTitle("Download backup file");
+
+            ApplicationManager.getApplication().invokeLater(() -> {
+                var files = FileDialog.chooseFiles(null, e.getProject(), c, "Download backup file");
+                if (ArrayUtils.isEmpty(files)) {
+                    c.close();
+                    return;
+                }
+
+                var source = files[0];
+                DownloadSource.fileSize(c, source.getPath())
+                        .thenAcceptAsync(size -> download(e, c, source.getPath(), source.getName(), size))
+                        .exceptionally(c::close);
+            });
+        }
+    }
+
+    @Override
+    public void update(@NotNull AnActionEvent e) {
+        var isVisible = AppSettingsState.getInstance().isEnableDownloadOption();
+        e.getPresentation().setVisible(isVisible);
+        if (isVisible) {
+            e.getPresentation().setEnabled(QueryHelper.getDataSource(e).isPresent());
+        }
+    }
+}
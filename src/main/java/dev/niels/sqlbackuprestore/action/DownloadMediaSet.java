@@ -0,0 +1,91 @@
+package dev.niels.sqlbackuprestore.action;
+
+import com.intellij.notification.Notification;
+import com.intellij.notification.NotificationType;
+import com.intellij.notification.Notifications.Bus;
+import com.intellij.openapi.actionSystem.ActionUpdateThread;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.fileChooser.FileChooser;
+import com.intellij.openapi.fileChooser.FileChooserDescriptorFactory;
+import com.intellij.openapi.project.DumbAwareAction;
+import com.intellij.openapi.vfs.VirtualFile;
+import dev.niels.sqlbackuprestore.AppSettingsState;
+import dev.niels.sqlbackuprestore.Constants;
+import dev.niels.sqlbackuprestore.download.MediaSet;
+import dev.niels.sqlbackuprestore.download.MediaSetDownload;
+import dev.niels.sqlbackuprestore.query.QueryHelper;
+import dev.niels.sqlbackuprestore.ui.filedialog.FileDialog;
+import dev.niels.sqlbackuprestore.ui.filedialog.RemoteFile;
+import one.util.streamex.StreamEx;
+import org.apache.commons.lang3.ArrayUtils;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Downloads all files of a striped backup (a media set), starting from one of its files
+ */
+public class DownloadMediaSet extends DumbAwareAction {
+    @Override
+    public @NotNull ActionUpdateThread getActionUpdateThread() {
+        return ActionUpdateThread.BGT;
+    }
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        try (var c = QueryHelper.client(e)) {
+            c.open();
+            c.setTitle("Download media set");
+
+            ApplicationManager.getApplication().invokeLater(() -> {
+                var files = FileDialog.chooseFiles(null, e.getProject(), c, "Choose a File of the Media Set");
+                if (ArrayUtils.isEmpty(files)) {
+                    c.close();
+                    return;
+                }
+
+                var file = files[0];
+                CompletableFuture.supplyAsync(() -> siblings(file))
+                        .thenCompose(siblings -> MediaSet.find(c, file.getPath(), siblings))
+                        .thenAccept(paths -> ApplicationManager.getApplication().invokeLater(() -> {
+                            if (paths.isEmpty()) {
+                                Bus.notify(new Notification(Constants.NOTIFICATION_GROUP, Constants.ERROR, file.getPath() + " is not a backup file", NotificationType.ERROR));
+                                c.close();
+                                return;
+                            }
+
+                            var directory = FileChooser.chooseFile(FileChooserDescriptorFactory.createSingleFolderDescriptor().withTitle("Choose Local Directory for " + paths.size() + " Files"), e.getProject(), null);
+                            if (directory == null) {
+                                c.close();
+                                return;
+                            }
+                            new MediaSetDownload(e.getProject(), c, paths, new File(directory.getPath())).queue();
+                        }))
+                        .exceptionally(c::close);
+            });
+        }
+    }
+
+    /**
+     * The other files in the directory of the file, these are checked when the backup history doesn't know the media set
+     */
+    private List<String> siblings(RemoteFile file) {
+        var parent = file.getParent();
+        if (parent == null) {
+            return List.of();
+        }
+        return StreamEx.of(parent.getChildren()).remove(VirtualFile::isDirectory).map(VirtualFile::getPath).toList();
+    }
+
+    @Override
+    public void update(@NotNull AnActionEvent e) {
+        var isVisible = AppSettingsState.getInstance().isEnableDownloadOption();
+        e.getPresentation().setVisible(isVisible);
+        if (isVisible) {
+            e.getPresentation().setEnabled(QueryHelper.getDataSource(e).isPresent());
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package dev.niels.sqlbackuprestore.action;
+
+import com.intellij.openapi.actionSystem.ActionUpdateThread;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.project.DumbAwareAction;
+import com.intellij.openapi.ui.InputValidator;
+import com.intellij.openapi.ui.Messages;
+import dev.niels.sqlbackuprestore.AppSettingsState;
+import dev.niels.sqlbackuprestore.query.QueryHelper;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Sets the maximum download speed for the selected data source, downloads that are running use the new limit for
+ * their next part
+ */
+public class DownloadSpeedLimit extends DumbAwareAction {
+    private static final double MB = 1_000_000d;
+
+    @Override
+    public @NotNull ActionUpdateThread getActionUpdateThread() {
+        return ActionUpdateThread.BGT;
+    }
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        var dataSource = QueryHelper.getDataSource(e);
+        if (dataSource.isEmpty()) {
+            return;
+        }
+
+        var limits = AppSettingsState.getInstance().getDownloadRateLimits();
+        var key = dataSource.get().getUniqueId();
+        var current = limits.getOrDefault(key, 0L);
+        var input = Messages.showInputDialog(e.getProject(),
+                "Maximum download speed from " + dataSource.get().getName() + " in MB/s, empty for unlimited",
+                "Download Speed Limit",
+                null,
+                current <= 0 ? "" : Double.toString(current / MB),
+                new InputValidator() {
+                    @Override
+                    public boolean checkInput(String inputString) {
+                        return StringUtils.isBlank(inputString) || NumberUtils.isCreatable(inputString.trim());
+                    }
+
+                    @Override
+                    public boolean canClose(String inputString) {
+                        return checkInput(inputString);
+                    }
+                });
+        if (input == null) {
+            return;
+        }
+
+        var limit = StringUtils.isBlank(input) ? 0 : (long) (NumberUtils.createDouble(input.trim()) * MB);
+        if (limit <= 0) {
+            limits.remove(key);
+        } else {
+            limits.put(key, limit);
+        }
+    }
+
+    @Override
+    public void update(@NotNull AnActionEvent e) {
+        e.getPresentation().setVisible(AppSettingsState.getInstance().isEnableDownloadOption());
+    }
+}
@@ -0,0 +1,47 @@
+package dev.niels.sqlbackuprestore.action;
+
+import com.intellij.notification.Notification;
+import com.intellij.notification.NotificationType;
+import com.intellij.notification.Notifications.Bus;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.application.ApplicationManager;
+import dev.niels.sqlbackuprestore.Constants;
+import dev.niels.sqlbackuprestore.backup.Filegroup;
+import dev.niels.sqlbackuprestore.backup.FilegroupSelection;
+import dev.niels.sqlbackuprestore.query.Client;
+import dev.niels.sqlbackuprestore.query.QueryHelper;
+import dev.niels.sqlbackuprestore.ui.FilegroupDialog;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Backup a part of the database. Large read-only filegroups only need to be backed up once, the partial backups
+ * after that contain only the filegroups that can change.
+ */
+@Slf4j
+public class FilegroupBackup extends Backup {
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        ApplicationManager.getApplication().invokeLater(() -> {
+            try (var c = QueryHelper.client(e)) {
+                c.setTitle("Backup filegroups");
+                backup(e, c, true);
+            }
+        });
+    }
+
+    @Override
+    protected CompletableFuture<FilegroupSelection> chooseFilegroups(@NotNull AnActionEvent e, Client c, String database) {
+        return Filegroup.list(c, database)
+                .orTimeout(10, TimeUnit.SECONDS)
+                .thenApplyAsync(filegroups -> FilegroupDialog.choose(e.getProject(), database, filegroups), Util.EDT)
+                .exceptionally(ex -> {
+                    log.warn("Unable to determine the filegroups of {}", database, ex);
+                    Bus.notify(new Notification(Constants.NOTIFICATION_GROUP, Constants.ERROR, "Unable to determine the filegroups of " + database + ":\n" + ex.getMessage(), NotificationType.ERROR));
+                    return null;
+                });
+    }
+}
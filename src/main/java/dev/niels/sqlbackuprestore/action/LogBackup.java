@@ -0,0 +1,14 @@
+package dev.niels.sqlbackuprestore.action;
+
+import dev.niels.sqlbackuprestore.backup.BackupMode;
+
+/**
+ * Backup the transaction log, restoring the log backups after the full backup keeps the data loss to the time since
+ * the last log backup
+ */
+public class LogBackup extends Backup {
+    @Override
+    protected BackupMode getMode() {
+        return BackupMode.LOG;
+    }
+}
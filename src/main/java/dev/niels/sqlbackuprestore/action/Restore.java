@@ -13,6 +13,7 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
 import dev.niels.sqlbackuprestore.AppSettingsState;
 import dev.niels.sqlbackuprestore.Constants;
+import dev.niels.sqlbackuprestore.backup.BackupDevice;
 import dev.niels.sqlbackuprestore.query.Auditor.MessageType;
 import dev.niels.sqlbackuprestore.query.Client;
 import dev.niels.sqlbackuprestore.query.ProgressTask;
@@ -36,13 +37,17 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -67,8 +72,8 @@ public class Restore extends DumbAwareAction {
         CompletableFuture.runAsync(() -> {
                     c.setTitle("Restore database");
                     var target = QueryHelper.getDatabase(e).map(DasObject::getName);
-                    var files = invokeAndWait(() -> FileDialog.chooseFiles(null, e.getProject(), c, "Restore " + target.orElse("new database")));
-                    if (ArrayUtils.isEmpty(files)) {
+                    var files = invokeAndWait(() -> chooseFiles(e, c, "Restore " + target.orElse("new database")));
+                    if (ArrayUtils.isEmpty(files) || !prepareFiles(c, files).join()) {
                         return;
                     }
 
@@ -90,9 +95,11 @@ public class Restore extends DumbAwareAction {
                     }
 
                     c.open();
+                    var sessionId = ProgressTask.sessionId(c);
+                    var restoring = new AtomicLong();
                     new ProgressTask(e.getProject(), "Restore backup", false, consumer -> {
                         try {
-                            new RestoreHelper(c, database, toRestore, consumer).unzipIfNeeded()
+                            new RestoreHelper(c, database, toRestore, consumer, restoring).unzipIfNeeded()
                                     .restore()
                                     .thenRun(() -> hackedRefresh(e))
                                     .thenRun(c::close).exceptionally(c::close)
@@ -100,12 +107,28 @@ public class Restore extends DumbAwareAction {
                         } catch (Exception ex) {
                             Bus.notify(new Notification(Constants.NOTIFICATION_GROUP, Constants.ERROR, ex.getMessage(), NotificationType.ERROR));
                         }
-                    }).queue();
+                    }).poll(c, sessionId, restoring::get).queue();
                 })
                 .thenRun(c::close)
                 .exceptionally(c::close);
     }
 
+    /**
+     * Ask for the backup files to restore, called on the event thread.
+     */
+    protected RemoteFile[] chooseFiles(@NotNull AnActionEvent e, Client c, String title) {
+        return FileDialog.chooseFiles(null, e.getProject(), c, title);
+    }
+
+    /**
+     * Prepare the server for reading the chosen files, not called on the event thread.
+     *
+     * @return completes with whether the files can be restored
+     */
+    protected CompletableFuture<Boolean> prepareFiles(Client c, RemoteFile[] files) {
+        return CompletableFuture.completedFuture(true);
+    }
+
     /**
      * RefreshModelAction.actionPerformed is override only. Try to hide the call from the verifier.
      */
@@ -131,11 +154,51 @@ public class Restore extends DumbAwareAction {
         if (fullsWithPartials.isEmpty()) {
             return null;
         }
+        RestoreAction action;
         if (fullsWithPartials.size() == 1 && fullsWithPartials.values().iterator().next().isEmpty()) {
-            return new RestoreAction(fullsWithPartials.keySet().iterator().next(), null);
+            action = new RestoreAction(fullsWithPartials.keySet().iterator().next(), null);
+        } else {
+            action = RestoreFullPartialDialog.choose(project, fullsWithPartials);
         }
 
-        return RestoreFullPartialDialog.choose(project, fullsWithPartials);
+        var logs = StreamEx.of(withMeta).filter(RemoteFileWithMeta::isLog).toList();
+        if (action == null || logs.isEmpty()) {
+            return action;
+        }
+        var chain = determineLogChain(project, action, logs);
+        return chain == null ? null : action.withLogs(chain);
+    }
+
+    /**
+     * Orders the log backups by LSN and takes the ones that continue from the full or differential backup. Log
+     * backups that end before the backup are skipped, when there is a gap the user can choose to restore up to the gap.
+     *
+     * @return the logs to apply in order or null when the restore was cancelled
+     */
+    private @Nullable List<RemoteFileWithMeta> determineLogChain(@Nullable Project project, RestoreAction action, List<RemoteFileWithMeta> logs) {
+        var base = action.partialBackup() != null ? action.partialBackup() : action.fullBackup();
+        var lsn = base.getLastLSN();
+        var chain = new ArrayList<RemoteFileWithMeta>();
+        RemoteFileWithMeta gap = null;
+        for (var logBackup : StreamEx.of(logs).sortedBy(RemoteFileWithMeta::getFirstLSN)) {
+            if (logBackup.getLastLSN().compareTo(lsn) <= 0) {
+                continue;
+            }
+            if (!logBackup.contains(lsn)) {
+                gap = logBackup;
+                break;
+            }
+            chain.add(logBackup);
+            lsn = logBackup.getLastLSN();
+        }
+
+        if (gap == null) {
+            return chain;
+        }
+        var last = chain.isEmpty() ? base : chain.get(chain.size() - 1);
+        var message = String.format("The log backups are not continuous, %s starts at LSN %s but %s ends at LSN %s. Do you want to restore up to %s?",
+                gap.getFile().getName(), gap.getFirstLSN(), last.getFile().getName(), last.getLastLSN(), last.getFile().getName());
+        return Messages.YES == invokeAndWait(() -> Messages.showYesNoDialog(project, message, "Broken Log Chain", Messages.getWarningIcon())) ? chain : null;
     }
 
     private void checkDatabaseInUse(Project project, Client c, String target) throws ExecutionException, InterruptedException {
@@ -200,7 +263,15 @@ public class Restore extends DumbAwareAction {
         private final String target;
         private RestoreAction action;
         private final BiConsumer<MessageType, String> progressConsumer;
+        /**
+         * Size of the file that is being restored
+         */
+        private final AtomicLong restoring;
         private final Map<String, Integer> uniqueNames = new HashMap<>();
+        /**
+         * First error the server reported, failed statements don't fail the future
+         */
+        private final AtomicReference<String> failure = new AtomicReference<>();
 
         public RestoreHelper unzipIfNeeded() {
             var files = action.getFiles().map(RemoteFileWithMeta::getFile).map(RemoteFile::getPath).toList();
@@ -228,35 +299,65 @@ public class Restore extends DumbAwareAction {
             private T value;
         }
 
+        /**
+         * Restore the files in order, the first file that fails stops the restore so that the database is never
+         * recovered with an incomplete chain.
+         */
         public CompletableFuture<Object> restore() {
             var temp = new RestoreTemp();
             var result = new ObjectHolder<>(CompletableFuture.completedFuture(null));
+            connection.addWarningConsumer(this::progress);
             action.getFiles().forEach(file -> result.setValue(
-                    result.getValue().thenCompose(x -> connection.getResult("RESTORE FILELISTONLY FROM DISK = N'" + file.getFile().getPath() + "';"))
+                    result.getValue().thenCompose(x -> connection.getResult("RESTORE FILELISTONLY FROM " + BackupDevice.of(file.getFile().getPath()) + ";"))
                             .thenApply(temp::setFiles)
                             .thenCompose(x -> determineTargetPath())
                             .thenApply(temp::setLocation)
                             .thenAccept(this::defaultFileNames)
                             .thenApply(v -> determineRestoreQuery(action, file, temp))
+                            .whenComplete((sql, ex) -> restoring.set(file.getBackupSize()))
 
-                            .thenCompose(sql -> connection.addWarningConsumer(this::progress).execute(sql))
-                            .thenApply(x -> null)
-                            .exceptionally(e -> null)
+                            .thenCompose(connection::execute)
+                            .thenApply(x -> checkFailure(file.getFile().getPath()))
             ));
-            return result.getValue();
+            if (!action.logs().isEmpty()) {
+                // Every file was restored WITH NORECOVERY, bring the database online
+                result.setValue(result.getValue()
+                        .thenCompose(x -> connection.execute(String.format("RESTORE DATABASE [%s] WITH RECOVERY", target)))
+                        .thenApply(x -> checkFailure("the recovery")));
+            }
+            return result.getValue().exceptionally(e -> {
+                var cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                Bus.notify(new Notification(Constants.NOTIFICATION_GROUP, Constants.ERROR, "The restore of " + target + " stopped, the remaining backups were not applied:\n" + cause.getMessage(), NotificationType.ERROR));
+                return null;
+            });
+        }
+
+        private Object checkFailure(String step) {
+            var error = failure.get();
+            if (error != null) {
+                throw new IllegalStateException("Restoring " + step + " failed: " + error);
+            }
+            return null;
         }
 
         private String determineRestoreQuery(RestoreAction action, RemoteFileWithMeta file, RestoreTemp temp) {
-            if (action.getType(file) == BackupType.FULL) {
+            var type = action.getType(file);
+            var device = BackupDevice.of(file.getFile().getPath());
+            // Tape options are not allowed for URLs
+            var unload = BackupDevice.isUrl(file.getFile().getPath()) ? "" : "NOUNLOAD, ";
+            if (type == BackupType.FULL) {
                 if (AppSettingsState.getInstance().isAskForRestoreFileLocations()) {
                     askForFileLocations(temp);
                 }
 
-                var recovery = action.partialBackup == null ? "" : "NORECOVERY, ";
+                var recovery = action.partialBackup == null && action.logs.isEmpty() ? "" : "NORECOVERY, ";
                 var moves = temp.files.stream().map(s -> String.format("MOVE N'%s' TO N'%s'", s.get("LogicalName"), s.get("RestoreAs"))).collect(Collectors.joining(", "));
-                return String.format("RESTORE DATABASE [%s] FROM DISK = N'%s' WITH file = 1, %s, %s NOUNLOAD, STATS = 5, REPLACE", target, file.getFile().getPath(), moves, recovery);
+                return String.format("RESTORE DATABASE [%s] FROM %s WITH file = 1, %s, %s %sSTATS = 5, REPLACE", target, device, moves, recovery, unload);
+            } else if (type == BackupType.LOG) {
+                return String.format("RESTORE LOG [%s] FROM %s WITH file = 1, NORECOVERY, %sSTATS = 5", target, device, unload);
             } else {
-                return String.format("RESTORE DATABASE [%s] FROM DISK = N'%s' WITH file = 1, NOUNLOAD, STATS = 5", target, file.getFile().getPath());
+                var recovery = action.logs.isEmpty() ? "" : "NORECOVERY, ";
+                return String.format("RESTORE DATABASE [%s] FROM %s WITH file = 1, %s %sSTATS = 5", target, device, recovery, unload);
             }
         }
 
@@ -300,6 +401,7 @@ public class Restore extends DumbAwareAction {
 
         private void progress(MessageType messageType, String warning) {
             if (messageType == MessageType.ERROR) {
+                failure.compareAndSet(null, warning);
                 Bus.notify(new Notification(Constants.NOTIFICATION_GROUP, Constants.ERROR, warning, NotificationType.ERROR));
             }
             progressConsumer.accept(messageType, warning);
@@ -312,12 +414,26 @@ public class Restore extends DumbAwareAction {
         private String location;
     }
 
-    public record RestoreAction(@NotNull RemoteFileWithMeta fullBackup, @Nullable RemoteFileWithMeta partialBackup) {
+    /**
+     * @param logs log backups that are applied after the full and partial backup, in order
+     */
+    public record RestoreAction(@NotNull RemoteFileWithMeta fullBackup, @Nullable RemoteFileWithMeta partialBackup, @NotNull List<RemoteFileWithMeta> logs) {
+        public RestoreAction(@NotNull RemoteFileWithMeta fullBackup, @Nullable RemoteFileWithMeta partialBackup) {
+            this(fullBackup, partialBackup, List.of());
+        }
+
+        public RestoreAction withLogs(List<RemoteFileWithMeta> logs) {
+            return new RestoreAction(fullBackup, partialBackup, logs);
+        }
+
         public StreamEx<RemoteFileWithMeta> getFiles() {
-            return StreamEx.of(fullBackup, partialBackup).nonNull();
+            return StreamEx.of(fullBackup, partialBackup).nonNull().append(logs);
         }
 
         public BackupType getType(RemoteFileWithMeta bak) {
+            if (logs.contains(bak)) {
+                return BackupType.LOG;
+            }
             return fullBackup == bak ? BackupType.FULL : partialBackup == bak ? BackupType.PARTIAL : BackupType.UNSUPPORTED;
         }
     }
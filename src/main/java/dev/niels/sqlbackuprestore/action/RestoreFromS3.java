@@ -0,0 +1,28 @@
+package dev.niels.sqlbackuprestore.action;
+
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import dev.niels.sqlbackuprestore.backup.S3Location;
+import dev.niels.sqlbackuprestore.query.Client;
+import dev.niels.sqlbackuprestore.ui.S3Dialog;
+import dev.niels.sqlbackuprestore.ui.filedialog.DatabaseFileSystem;
+import dev.niels.sqlbackuprestore.ui.filedialog.RemoteFile;
+import one.util.streamex.StreamEx;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Restore from backups in S3 compatible storage with RESTORE FROM URL (SQL2022+)
+ */
+public class RestoreFromS3 extends Restore {
+    @Override
+    protected RemoteFile[] chooseFiles(@NotNull AnActionEvent e, Client c, String title) {
+        var fs = new DatabaseFileSystem(c);
+        return StreamEx.of(S3Dialog.chooseFiles(e.getProject(), title + " from S3")).map(l -> (RemoteFile) fs.findFileByPath(l.url())).toArray(RemoteFile[]::new);
+    }
+
+    @Override
+    protected CompletableFuture<Boolean> prepareFiles(Client c, RemoteFile[] files) {
+        return BackupToS3.applyCredential(c, S3Location.parse(files[0].getPath()));
+    }
+}
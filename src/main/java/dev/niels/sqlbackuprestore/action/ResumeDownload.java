@@ -0,0 +1,78 @@
+package dev.niels.sqlbackuprestore.action;
+
+import com.intellij.notification.Notification;
+import com.intellij.notification.NotificationType;
+import com.intellij.notification.Notifications.Bus;
+import com.intellij.openapi.actionSystem.ActionUpdateThread;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.fileChooser.FileChooser;
+import com.intellij.openapi.fileChooser.FileChooserDescriptorFactory;
+import com.intellij.openapi.project.DumbAwareAction;
+import dev.niels.sqlbackuprestore.AppSettingsState;
+import dev.niels.sqlbackuprestore.Constants;
+import dev.niels.sqlbackuprestore.download.DownloadManifest;
+import dev.niels.sqlbackuprestore.download.DownloadSource;
+import dev.niels.sqlbackuprestore.download.DownloadTask;
+import dev.niels.sqlbackuprestore.query.QueryHelper;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Continues a download that did not complete, only the parts that are missing according to the manifest are downloaded.
+ */
+public class ResumeDownload extends DumbAwareAction {
+    @Override
+    public @NotNull ActionUpdateThread getActionUpdateThread() {
+        return ActionUpdateThread.BGT;
+    }
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        ApplicationManager.getApplication().invokeLater(() -> {
+            var chosen = FileChooser.chooseFile(FileChooserDescriptorFactory.createSingleFileDescriptor().withTitle("Choose Incomplete Download"), e.getProject(), null);
+            if (chosen == null) {
+                return;
+            }
+
+            DownloadManifest manifest;
+            try {
+                manifest = DownloadManifest.load(new File(chosen.getPath()));
+            } catch (IOException | RuntimeException ex) {
+                Bus.notify(new Notification(Constants.NOTIFICATION_GROUP, Constants.ERROR, "Unable to read the manifest of " + chosen.getPath() + ":\n" + ex.getMessage(), NotificationType.ERROR));
+                return;
+            }
+            if (manifest == null) {
+                Bus.notify(new Notification(Constants.NOTIFICATION_GROUP, Constants.ERROR, "There is no incomplete download for " + chosen.getPath(), NotificationType.ERROR));
+                return;
+            }
+
+            var dataSource = QueryHelper.getDataSource(e);
+            if (dataSource.isEmpty() || !dataSource.get().getUniqueId().equals(manifest.getDataSource())) {
+                Bus.notify(new Notification(Constants.NOTIFICATION_GROUP, Constants.ERROR, chosen.getPath() + " was downloaded from another data source, select the data source the download was started from to resume it.", NotificationType.ERROR));
+                return;
+            }
+
+            try (var c = QueryHelper.client(e)) {
+                c.open();
+                c.setTitle("Resume download of " + manifest.getSource());
+
+                var source = DownloadSource.of(manifest.getSource(), manifest.getCompression());
+                source.prepare(c)
+                        .thenRun(() -> ApplicationManager.getApplication().invokeLater(() -> new DownloadTask(e.getProject(), c, source, manifest).queue()))
+                        .exceptionally(c::close);
+            }
+        });
+    }
+
+    @Override
+    public void update(@NotNull AnActionEvent e) {
+        var isVisible = AppSettingsState.getInstance().isEnableDownloadOption();
+        e.getPresentation().setVisible(isVisible);
+        if (isVisible) {
+            e.getPresentation().setEnabled(QueryHelper.getDataSource(e).isPresent());
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package dev.niels.sqlbackuprestore.action;
+
+import com.intellij.notification.Notification;
+import com.intellij.notification.NotificationType;
+import com.intellij.notification.Notifications.Bus;
+import com.intellij.openapi.actionSystem.ActionUpdateThread;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.project.DumbAwareAction;
+import dev.niels.sqlbackuprestore.Constants;
+import dev.niels.sqlbackuprestore.backup.BackupSchedule;
+import dev.niels.sqlbackuprestore.query.QueryHelper;
+import dev.niels.sqlbackuprestore.ui.BackupScheduleDialog;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Create, change or remove the recurring backup of the selected database, see BackupScheduler
+ */
+public class ScheduleBackup extends DumbAwareAction {
+    @Override
+    public @NotNull ActionUpdateThread getActionUpdateThread() {
+        return ActionUpdateThread.BGT;
+    }
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        var database = QueryHelper.getDatabase(e);
+        if (database.isEmpty()) {
+            return;
+        }
+        var name = database.get().getName();
+
+        try (var c = QueryHelper.client(e)) {
+            var key = c.getDataSource().getUniqueId();
+            var schedule = BackupScheduleDialog.edit(e.getProject(), c, name, BackupSchedule.find(key, name));
+            if (schedule == null) {
+                return;
+            }
+            BackupSchedule.save(key, name, schedule);
+            var message = schedule.getDaysOfWeek().isEmpty() ? "The backup schedule of " + name + " was removed" : name + " is backed up " + schedule.describe();
+            Bus.notify(new Notification(Constants.NOTIFICATION_GROUP, "Backup schedule", message, NotificationType.INFORMATION));
+        }
+    }
+
+    @Override
+    public void update(@NotNull AnActionEvent e) {
+        e.getPresentation().setEnabled(QueryHelper.getDatabase(e).isPresent());
+    }
+}
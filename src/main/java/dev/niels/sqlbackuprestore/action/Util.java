@@ -1,6 +1,15 @@
 package dev.niels.sqlbackuprestore.action;
 
+import com.intellij.openapi.application.ApplicationManager;
+
+import java.util.concurrent.Executor;
+
 public class Util {
+    /**
+     * Runs continuations on the event thread, to show a dialog after the server was queried in the background
+     */
+    public static final Executor EDT = runnable -> ApplicationManager.getApplication().invokeLater(runnable);
+
     private Util() {
     }
 
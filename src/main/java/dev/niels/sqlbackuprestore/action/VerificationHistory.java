@@ -0,0 +1,30 @@
+package dev.niels.sqlbackuprestore.action;
+
+import com.intellij.openapi.actionSystem.ActionUpdateThread;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.project.DumbAwareAction;
+import dev.niels.sqlbackuprestore.AppSettingsState;
+import dev.niels.sqlbackuprestore.ui.VerificationHistoryDialog;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Shows the results of the verifications of the last backups
+ */
+public class VerificationHistory extends DumbAwareAction {
+    @Override
+    public @NotNull ActionUpdateThread getActionUpdateThread() {
+        return ActionUpdateThread.BGT;
+    }
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        new VerificationHistoryDialog(e.getProject(), List.copyOf(AppSettingsState.getInstance().getVerificationHistory())).show();
+    }
+
+    @Override
+    public void update(@NotNull AnActionEvent e) {
+        e.getPresentation().setVisible(AppSettingsState.getInstance().isVerifyBackup() || !AppSettingsState.getInstance().getVerificationHistory().isEmpty());
+    }
+}
@@ -0,0 +1,27 @@
+package dev.niels.sqlbackuprestore.backup;
+
+import one.util.streamex.StreamEx;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.List;
+
+/**
+ * The backup devices of BACKUP and RESTORE statements, files on the server are DISK devices and objects in S3
+ * compatible storage URL devices.
+ */
+public final class BackupDevice {
+    private BackupDevice() {
+    }
+
+    public static boolean isUrl(String path) {
+        return StringUtils.startsWithIgnoreCase(path, S3Location.SCHEME);
+    }
+
+    public static String of(String path) {
+        return (isUrl(path) ? "URL" : "DISK") + " = N'" + path + "'";
+    }
+
+    public static String of(List<String> paths) {
+        return StreamEx.of(paths).map(BackupDevice::of).joining(", ");
+    }
+}
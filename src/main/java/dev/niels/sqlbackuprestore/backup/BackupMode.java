@@ -0,0 +1,55 @@
+package dev.niels.sqlbackuprestore.backup;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * The kind of backup that is made.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum BackupMode {
+    /**
+     * Full backup that does not affect the backup chain of the database
+     */
+    FULL("DATABASE", "COPY_ONLY, "),
+    /**
+     * Full backup that is the base for the next differential backups
+     */
+    BASE("DATABASE", ""),
+    /**
+     * The extents that changed since the last base backup
+     */
+    DIFFERENTIAL("DATABASE", "DIFFERENTIAL, "),
+    /**
+     * The transaction log since the previous log backup, only for databases in the full or bulk-logged recovery model
+     */
+    LOG("LOG", "");
+
+    /**
+     * What is backed up, BACKUP DATABASE or BACKUP LOG
+     */
+    private final String statement;
+    /**
+     * Options that go in front of the other options in the WITH clause
+     */
+    private final String options;
+
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd_HHmm");
+
+    /**
+     * Default file name of a backup of the database, differential and log backups are timestamped because they are
+     * made repeatedly.
+     */
+    public String fileName(String database) {
+        var timestamp = LocalDateTime.now().format(TIMESTAMP);
+        return switch (this) {
+            case DIFFERENTIAL -> database + "_diff_" + timestamp + ".bak";
+            case LOG -> database + "_log_" + timestamp + ".trn";
+            default -> database + ".bak";
+        };
+    }
+}
@@ -0,0 +1,45 @@
+package dev.niels.sqlbackuprestore.backup;
+
+import dev.niels.sqlbackuprestore.AppSettingsState;
+import dev.niels.sqlbackuprestore.action.Util;
+import dev.niels.sqlbackuprestore.query.Client;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Backup settings that are stored as the default for a data source, i.e. the fastest settings of a benchmark.
+ */
+public record BackupProfile(int bufferCount, int maxTransferSize, int stripes, boolean compression) {
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * The default for the data source of the connection, null when there is none.
+     */
+    public static @Nullable BackupProfile of(Client c) {
+        var encoded = AppSettingsState.getInstance().getBackupProfiles().get(c.getDataSource().getUniqueId());
+        if (encoded == null) {
+            return null;
+        }
+        var parts = StringUtils.split(encoded, ',');
+        if (parts.length != 4) {
+            return null;
+        }
+        return new BackupProfile(NumberUtils.toInt(parts[0]), NumberUtils.toInt(parts[1]), NumberUtils.toInt(parts[2], 1), Boolean.parseBoolean(parts[3]));
+    }
+
+    /**
+     * Store as the default for the data source of the connection.
+     */
+    public void save(Client c) {
+        AppSettingsState.getInstance().getBackupProfiles().put(c.getDataSource().getUniqueId(), bufferCount + "," + maxTransferSize + "," + stripes + "," + compression);
+    }
+
+    public TransferOptions getTransferOptions() {
+        return new TransferOptions(bufferCount, maxTransferSize, BLOCK_SIZE);
+    }
+
+    public String describe() {
+        return String.format("%s buffers of %s, %s stripe%s, %s", bufferCount, Util.humanReadableByteCountSI(maxTransferSize), stripes, stripes == 1 ? "" : "s", compression ? "compressed" : "not compressed");
+    }
+}
@@ -0,0 +1,67 @@
+package dev.niels.sqlbackuprestore.backup;
+
+import com.intellij.util.concurrency.AppExecutorUtil;
+import dev.niels.sqlbackuprestore.AppSettingsState;
+import dev.niels.sqlbackuprestore.query.Client;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Runs the backups of a server, at most the configured number at the same time so the I/O of the instance isn't
+ * overloaded. There is one queue per data source, also when multiple batches are started. The limit is read whenever a
+ * backup finishes, changing it takes effect for the backups that are still waiting.
+ */
+public class BackupQueue {
+    private static final Map<String, BackupQueue> queues = new ConcurrentHashMap<>();
+    private final Queue<Runnable> waiting = new ArrayDeque<>();
+    private int running;
+
+    public static BackupQueue of(Client c) {
+        return queues.computeIfAbsent(c.getDataSource().getUniqueId(), k -> new BackupQueue());
+    }
+
+    /**
+     * Queue a backup, it is started when there is room.
+     *
+     * @return completes when the future of the backup completes
+     */
+    public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> backup) {
+        var result = new CompletableFuture<T>();
+        synchronized (this) {
+            waiting.add(() -> {
+                try {
+                    backup.get().whenComplete((value, ex) -> {
+                        if (ex != null) {
+                            result.completeExceptionally(ex);
+                        } else {
+                            result.complete(value);
+                        }
+                    });
+                } catch (RuntimeException ex) {
+                    result.completeExceptionally(ex);
+                }
+            });
+        }
+        result.whenComplete((value, ex) -> finished());
+        start();
+        return result;
+    }
+
+    private synchronized void finished() {
+        running--;
+        start();
+    }
+
+    private synchronized void start() {
+        var limit = Math.max(1, AppSettingsState.getInstance().getBackupConcurrency());
+        while (running < limit && !waiting.isEmpty()) {
+            running++;
+            AppExecutorUtil.getAppExecutorService().execute(waiting.poll());
+        }
+    }
+}
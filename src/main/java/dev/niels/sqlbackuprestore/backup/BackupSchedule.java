@@ -0,0 +1,108 @@
+package dev.niels.sqlbackuprestore.backup;
+
+import com.intellij.util.xmlb.annotations.Transient;
+import dev.niels.sqlbackuprestore.AppSettingsState;
+import lombok.Data;
+import one.util.streamex.StreamEx;
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Recurring backup of a database, stored in the settings. The backup runs once on every selected day, from the
+ * configured hour or as soon as the IDE runs after that.
+ */
+@Data
+public class BackupSchedule {
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd_HHmm");
+
+    /**
+     * Unique id of the data source
+     */
+    private String dataSource;
+    private String database;
+    /**
+     * Directory on the server the backups are written to
+     */
+    private String directory;
+    /**
+     * DayOfWeek names, separated by commas
+     */
+    private String days = "";
+    private int hour = 2;
+    /**
+     * Scheduled backups older than this number of days are deleted from the server, 0 keeps all
+     */
+    private int retentionDays = 7;
+    /**
+     * Start of the last run in epoch milliseconds
+     */
+    private long lastRun;
+
+    /**
+     * The schedule of the database, null when it doesn't have one.
+     */
+    public static @Nullable BackupSchedule find(String dataSource, String database) {
+        return StreamEx.of(AppSettingsState.getInstance().getBackupSchedules())
+                .findFirst(s -> StringUtils.equals(s.dataSource, dataSource) && StringUtils.equals(s.database, database))
+                .orElse(null);
+    }
+
+    /**
+     * Replace the schedule of the database, a schedule without days removes it.
+     */
+    public static void save(String dataSource, String database, @Nullable BackupSchedule schedule) {
+        var schedules = AppSettingsState.getInstance().getBackupSchedules();
+        schedules.removeIf(s -> StringUtils.equals(s.dataSource, dataSource) && StringUtils.equals(s.database, database));
+        if (schedule != null && !schedule.getDaysOfWeek().isEmpty()) {
+            schedules.add(schedule);
+        }
+    }
+
+    @Transient
+    public Set<DayOfWeek> getDaysOfWeek() {
+        var result = EnumSet.noneOf(DayOfWeek.class);
+        StreamEx.of(StringUtils.split(days, ',')).map(StringUtils::trim).map(DayOfWeek::valueOf).forEach(result::add);
+        return result;
+    }
+
+    @Transient
+    public BackupSchedule setDaysOfWeek(Set<DayOfWeek> daysOfWeek) {
+        days = StreamEx.of(daysOfWeek).sorted().map(DayOfWeek::name).joining(",");
+        return this;
+    }
+
+    /**
+     * Whether the backup should run, it runs at most once per day.
+     */
+    public boolean isDue(LocalDateTime now) {
+        var start = now.toLocalDate().atTime(hour, 0);
+        return getDaysOfWeek().contains(now.getDayOfWeek())
+                && !now.isBefore(start)
+                && lastRun < start.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    public String fileName(LocalDateTime now) {
+        return database + "_" + now.format(TIMESTAMP) + ".bak";
+    }
+
+    /**
+     * Whether the path is named like a backup of this schedule, see fileName
+     */
+    public boolean isScheduledFile(String path) {
+        var name = StringUtils.substringAfterLast(path.replace('/', '\\'), "\\");
+        return name.matches(Pattern.quote(database) + "_\\d{8}_\\d{4}\\.bak");
+    }
+
+    public String describe() {
+        return String.format("%s at %02d:00, keep %s", StreamEx.of(getDaysOfWeek()).map(d -> StringUtils.capitalize(d.name().toLowerCase())).joining(", "), hour,
+                retentionDays <= 0 ? "all backups" : retentionDays + " days");
+    }
+}
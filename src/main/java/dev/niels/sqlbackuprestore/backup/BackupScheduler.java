@@ -0,0 +1,148 @@
+package dev.niels.sqlbackuprestore.backup;
+
+import com.intellij.database.dataSource.LocalDataSource;
+import com.intellij.database.dataSource.LocalDataSourceManager;
+import com.intellij.notification.Notification;
+import com.intellij.notification.NotificationType;
+import com.intellij.notification.Notifications.Bus;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.startup.ProjectActivity;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import dev.niels.sqlbackuprestore.AppSettingsState;
+import dev.niels.sqlbackuprestore.Constants;
+import dev.niels.sqlbackuprestore.action.Backup;
+import dev.niels.sqlbackuprestore.query.Auditor.MessageType;
+import dev.niels.sqlbackuprestore.query.Client;
+import dev.niels.sqlbackuprestore.query.ProgressTask;
+import dev.niels.sqlbackuprestore.query.QueryHelper;
+import kotlin.Unit;
+import kotlin.coroutines.Continuation;
+import lombok.extern.slf4j.Slf4j;
+import one.util.streamex.StreamEx;
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the scheduled backups of the data sources of a project while the project is open. Every minute the schedules
+ * are checked, a backup that is due is claimed first so that projects sharing a data source don't both run it. The
+ * schedules are persisted settings, they are only checked and claimed on the event thread.
+ */
+@Slf4j
+public class BackupScheduler implements ProjectActivity {
+    @Override
+    public @Nullable Object execute(@NotNull Project project, @NotNull Continuation<? super Unit> continuation) {
+        var future = AppExecutorUtil.getAppScheduledExecutorService().scheduleWithFixedDelay(
+                () -> ApplicationManager.getApplication().invokeLater(() -> runDue(project), project.getDisposed()), 1, 1, TimeUnit.MINUTES);
+        Disposer.register(project, () -> future.cancel(false));
+        return Unit.INSTANCE;
+    }
+
+    private static void runDue(Project project) {
+        if (project.isDisposed()) {
+            return;
+        }
+        var dataSources = StreamEx.of(LocalDataSourceManager.getInstance(project).getDataSources())
+                .toMap(LocalDataSource::getUniqueId, d -> d, (a, b) -> a);
+        var now = LocalDateTime.now();
+        for (var schedule : List.copyOf(AppSettingsState.getInstance().getBackupSchedules())) {
+            var dataSource = dataSources.get(schedule.getDataSource());
+            if (dataSource != null && claim(schedule, now)) {
+                run(project, dataSource, schedule, now);
+            }
+        }
+    }
+
+    private static boolean claim(BackupSchedule schedule, LocalDateTime now) {
+        if (!schedule.isDue(now)) {
+            return false;
+        }
+        schedule.setLastRun(now.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        return true;
+    }
+
+    private static void run(Project project, LocalDataSource dataSource, BackupSchedule schedule, LocalDateTime now) {
+        var database = schedule.getDatabase();
+        var separator = schedule.getDirectory().contains("/") && !schedule.getDirectory().contains("\\") ? "/" : "\\";
+        var path = StringUtils.stripEnd(schedule.getDirectory(), "/\\") + separator + schedule.fileName(now);
+
+        new ProgressTask(project, "Scheduled backup of " + database, false, consumer -> {
+            try (var c = QueryHelper.client(project, dataSource)) {
+                c.setTitle("Scheduled backup of " + database);
+                var errors = new CopyOnWriteArrayList<String>();
+                c.addWarningConsumer(consumer);
+                c.addWarningConsumer((type, msg) -> {
+                    if (type == MessageType.ERROR) {
+                        errors.add(msg);
+                    }
+                });
+                try {
+                    var problem = Backup.checkSpace(c, database, BackupMode.FULL, List.of(path));
+                    if (problem != null) {
+                        Bus.notify(new Notification(Constants.NOTIFICATION_GROUP, Constants.ERROR, "The scheduled backup of " + database + " was skipped:\n" + problem, NotificationType.ERROR));
+                        return;
+                    }
+                    BackupQueue.of(c).submit(() -> Backup.backupStatement(c, database, BackupMode.FULL, List.of(path)).thenCompose(c::execute)).get();
+                    if (!errors.isEmpty()) {
+                        // Keep the old backups when the new one failed
+                        Bus.notify(new Notification(Constants.NOTIFICATION_GROUP, Constants.ERROR, "The scheduled backup of " + database + " failed:\n" + String.join("\n", errors), NotificationType.ERROR));
+                        return;
+                    }
+                    if (AppSettingsState.getInstance().isVerifyBackup() && !Boolean.TRUE.equals(Verification.verify(project, c, database, List.of(path)).get())) {
+                        // Keep the old backups when the new one is not valid, the verification notifies the problem
+                        return;
+                    }
+                    var pruned = prune(c, schedule).get();
+                    Bus.notify(new Notification(Constants.NOTIFICATION_GROUP, "Backup created", "Scheduled backup of " + database + " written to " + path
+                            + (pruned == 0 ? "" : ", " + pruned + " old backup" + (pruned == 1 ? " was" : "s were") + " deleted"), NotificationType.INFORMATION));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    Bus.notify(new Notification(Constants.NOTIFICATION_GROUP, Constants.ERROR, "The scheduled backup of " + database + " failed:\n" + e.getMessage(), NotificationType.ERROR));
+                }
+            }
+        }).queue();
+    }
+
+    /**
+     * Delete the backups of the schedule that are older than the retention. The files are found through the backup
+     * history in msdb, only copy-only full backups in the directory of the schedule that are named like scheduled
+     * backups are deleted.
+     *
+     * @return the number of deleted files
+     */
+    private static CompletableFuture<Integer> prune(Client c, BackupSchedule schedule) {
+        if (schedule.getRetentionDays() <= 0) {
+            return CompletableFuture.completedFuture(0);
+        }
+        var directory = StringUtils.stripEnd(schedule.getDirectory(), "/\\");
+        return c.getResult(String.format("""
+                        SELECT DISTINCT mf.physical_device_name AS path
+                        FROM msdb.dbo.backupset bs
+                        INNER JOIN msdb.dbo.backupmediafamily mf ON mf.media_set_id = bs.media_set_id
+                        WHERE bs.database_name = N'%s' AND bs.type = 'D' AND bs.is_copy_only = 1
+                          AND bs.backup_finish_date < DATEADD(day, -%d, GETDATE())
+                          AND LEFT(mf.physical_device_name, LEN(N'%s') + 1) IN (N'%s\\', N'%s/')""",
+                        schedule.getDatabase(), schedule.getRetentionDays(), directory, directory, directory))
+                .thenApply(rows -> StreamEx.of(rows).map(row -> Objects.toString(row.get("path"), "")).filter(schedule::isScheduledFile).toList())
+                .thenCompose(paths -> {
+                    CompletableFuture<?> chain = CompletableFuture.completedFuture(null);
+                    for (var path : paths) {
+                        log.info("Deleting scheduled backup {}", path);
+                        chain = chain.thenCompose(x -> c.execute("EXECUTE master.dbo.xp_delete_file 0, N'" + path + "'"));
+                    }
+                    return chain.thenApply(x -> paths.size());
+                });
+    }
+}
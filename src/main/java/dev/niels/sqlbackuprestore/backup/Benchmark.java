@@ -0,0 +1,145 @@
+package dev.niels.sqlbackuprestore.backup;
+
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task.Backgroundable;
+import com.intellij.openapi.project.Project;
+import dev.niels.sqlbackuprestore.query.Client;
+import dev.niels.sqlbackuprestore.query.QueryHelper;
+import dev.niels.sqlbackuprestore.query.RequestPoller;
+import lombok.extern.slf4j.Slf4j;
+import one.util.streamex.StreamEx;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Runs short COPY_ONLY backups of a database to the NUL device with different settings. Nothing is written, so the
+ * speed of a trial is the speed at which the data files can be read and compressed. Comparing it with a real backup
+ * shows whether the target is the bottleneck. Every trial runs on its own session, which is closed after
+ * {@link #TRIAL_SECONDS} or when the benchmark is cancelled, so the database is not read completely for every setting.
+ */
+@Slf4j
+public class Benchmark extends Backgroundable {
+    private static final Pattern COMPLETED = Pattern.compile("in ([\\d.]+) seconds \\(([\\d.]+) MB/sec\\)");
+    private static final int TRIAL_SECONDS = 20;
+    private static final int[] BUFFER_COUNTS = {8, 32};
+    private static final int[] TRANSFER_SIZES = {1024 * 1024, 4 * 1024 * 1024};
+    private static final int[] STRIPES = {1, 4};
+    private final Client connection;
+    private final String database;
+    private final boolean compressionSupported;
+    private final Consumer<List<Result>> onFinished;
+
+    /**
+     * @param connection the connection that polls the progress of the trials, will be closed when the benchmark finishes
+     * @param onFinished receives the results ordered from fast to slow, also when the benchmark was cancelled
+     */
+    public Benchmark(@Nullable Project project, Client connection, String database, boolean compressionSupported, Consumer<List<Result>> onFinished) {
+        super(project, "Benchmark backup of " + database, true);
+        this.connection = connection;
+        this.database = database;
+        this.compressionSupported = compressionSupported;
+        this.onFinished = onFinished;
+    }
+
+    @Override
+    public void run(@NotNull ProgressIndicator indicator) {
+        indicator.setIndeterminate(false);
+        indicator.setFraction(0.0);
+
+        var profiles = profiles();
+        var results = new ArrayList<Result>();
+        try {
+            var size = SpaceCheck.estimate(connection, database, BackupMode.FULL, false).get(30, TimeUnit.SECONDS);
+            for (var i = 0; i < profiles.size() && !indicator.isCanceled(); i++) {
+                var profile = profiles.get(i);
+                indicator.setText2(profile.describe());
+                indicator.setFraction(i / (double) profiles.size());
+                var result = trial(profile, size, indicator);
+                if (result != null && result.mbPerSecond() > 0) {
+                    results.add(result);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("Benchmark of {} failed", database, e);
+        } finally {
+            connection.close();
+        }
+        onFinished.accept(StreamEx.of(results).reverseSorted((a, b) -> Double.compare(a.mbPerSecond(), b.mbPerSecond())).toList());
+    }
+
+    /**
+     * Run the backup with the profile for at most {@link #TRIAL_SECONDS}. The speed is taken from the message that the
+     * backup completed, or from the progress that the server reports for the request when it is stopped before that.
+     *
+     * @param size the number of bytes a complete backup reads
+     * @return the result, null when the trial was cancelled or the progress couldn't be determined
+     */
+    private @Nullable Result trial(BackupProfile profile, long size, ProgressIndicator indicator) throws InterruptedException, ExecutionException, TimeoutException {
+        var completed = new AtomicReference<Result>();
+        try (var trial = QueryHelper.client(connection)) {
+            trial.setTitle("Benchmark backup of " + database);
+            trial.addWarningConsumer((type, message) -> {
+                var matcher = COMPLETED.matcher(message == null ? "" : message);
+                if (matcher.find()) {
+                    completed.set(new Result(profile, Double.parseDouble(matcher.group(1)), Double.parseDouble(matcher.group(2))));
+                }
+            });
+            var sessionId = RequestPoller.sessionId(trial);
+            var backup = trial.execute(query(profile));
+            var session = sessionId.get(10, TimeUnit.SECONDS);
+
+            RequestPoller.Progress progress = null;
+            var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TRIAL_SECONDS);
+            while (!backup.isDone() && !indicator.isCanceled() && System.nanoTime() < deadline) {
+                Thread.sleep(1000);
+                var current = RequestPoller.progress(connection, session).get(5, TimeUnit.SECONDS);
+                progress = current == null ? progress : current;
+            }
+            if (indicator.isCanceled()) {
+                return null;
+            }
+            if (completed.get() != null) {
+                return completed.get();
+            }
+            if (progress == null || progress.elapsed() <= 0) {
+                return null;
+            }
+            var seconds = progress.elapsed() / 1000.0;
+            return new Result(profile, seconds, size * progress.percent() / 100 / seconds / (1024 * 1024));
+        }
+    }
+
+    private List<BackupProfile> profiles() {
+        var result = new ArrayList<BackupProfile>();
+        for (var compression : compressionSupported ? new boolean[]{false, true} : new boolean[]{false}) {
+            for (var stripes : STRIPES) {
+                for (var transferSize : TRANSFER_SIZES) {
+                    for (var bufferCount : BUFFER_COUNTS) {
+                        result.add(new BackupProfile(bufferCount, transferSize, stripes, compression));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private String query(BackupProfile profile) {
+        var disks = StreamEx.constant("DISK = N'NUL'", profile.stripes()).joining(", ");
+        return "BACKUP DATABASE [" + database + "] TO " + disks + " WITH COPY_ONLY, " + (profile.compression() ? "COMPRESSION" : "NO_COMPRESSION") +
+                ", BUFFERCOUNT = " + profile.bufferCount() + ", MAXTRANSFERSIZE = " + profile.maxTransferSize();
+    }
+
+    public record Result(BackupProfile profile, double seconds, double mbPerSecond) {
+    }
+}
@@ -0,0 +1,49 @@
+package dev.niels.sqlbackuprestore.backup;
+
+import dev.niels.sqlbackuprestore.query.Client;
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The full backup that a differential backup of a database is based on. Copy-only backups are never a base. The
+ * database knows whether it has a base, the file of the base is only known when it is in the backup history.
+ *
+ * @param path     the first file of the base backup, null when it's not in the backup history
+ * @param finished when the base backup finished
+ */
+public record DifferentialBase(@Nullable String path, @Nullable String finished) {
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd_HHmm");
+
+    /**
+     * @return the base, null when the database doesn't have one
+     */
+    public static CompletableFuture<DifferentialBase> find(Client c, String database) {
+        return c.getResult("select top 1 f.differential_base_lsn AS lsn, f.differential_base_time AS finished, m.physical_device_name AS path\n" +
+                        "from sys.master_files f\n" +
+                        "    left join msdb.dbo.backupset b on b.backup_set_uuid = f.differential_base_guid\n" +
+                        "    left join msdb.dbo.backupmediafamily m on m.media_set_id = b.media_set_id and m.family_sequence_number = 1 and m.mirror = 0\n" +
+                        "where f.database_id = DB_ID(N'" + database + "') and f.file_id = 1")
+                .thenApply(rows -> {
+                    if (rows.isEmpty() || rows.get(0).get("lsn") == null) {
+                        return null;
+                    }
+                    return new DifferentialBase(Objects.toString(rows.get(0).get("path"), null), Objects.toString(rows.get(0).get("finished"), null));
+                });
+    }
+
+    /**
+     * Name for a new differential backup, named after the file of the base so they are easy to pair.
+     */
+    public String fileName(String database) {
+        var name = database;
+        if (path != null) {
+            name = StringUtils.substringBeforeLast(path.substring(Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\')) + 1), ".");
+        }
+        return name + "_diff_" + LocalDateTime.now().format(TIMESTAMP) + ".bak";
+    }
+}
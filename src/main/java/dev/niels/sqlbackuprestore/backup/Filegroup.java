@@ -0,0 +1,41 @@
+package dev.niels.sqlbackuprestore.backup;
+
+import dev.niels.sqlbackuprestore.query.Client;
+import one.util.streamex.StreamEx;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A filegroup of a database with the size of its files.
+ *
+ * @param size bytes allocated by the files of the filegroup
+ * @param used bytes in use, this is what a backup of the filegroup reads
+ */
+public record Filegroup(String name, boolean readOnly, long size, long used) {
+    /**
+     * The filegroups of the database, the primary filegroup first.
+     */
+    public static CompletableFuture<List<Filegroup>> list(Client c, String database) {
+        // FILEPROPERTY only works in the database itself and is null for FILESTREAM containers
+        return c.getResult(String.format("""
+                        USE [%s] SELECT fg.name AS name, fg.is_read_only AS readOnly,
+                            SUM(CAST(f.size AS bigint)) * 8192 AS size,
+                            SUM(CAST(ISNULL(FILEPROPERTY(f.name, 'SpaceUsed'), f.size) AS bigint)) * 8192 AS used
+                        FROM sys.filegroups fg JOIN sys.database_files f ON f.data_space_id = fg.data_space_id
+                        GROUP BY fg.data_space_id, fg.name, fg.is_read_only
+                        ORDER BY fg.data_space_id""", database))
+                .thenApply(rows -> StreamEx.of(rows)
+                        .map(r -> new Filegroup(Objects.toString(r.get("name")), isTrue(r.get("readOnly")), toLong(r.get("size")), toLong(r.get("used"))))
+                        .toList());
+    }
+
+    private static boolean isTrue(Object o) {
+        return o instanceof Boolean b ? b : o instanceof Number n && n.intValue() == 1;
+    }
+
+    private static long toLong(Object o) {
+        return o instanceof Number n ? n.longValue() : 0L;
+    }
+}
@@ -0,0 +1,38 @@
+package dev.niels.sqlbackuprestore.backup;
+
+import one.util.streamex.StreamEx;
+
+import java.util.List;
+
+/**
+ * What part of a database is backed up. Read-only filegroups don't change, a partial backup (READ_WRITE_FILEGROUPS)
+ * skips them so it is only as large as the data that can change.
+ *
+ * @param readWrite  back up all read-write filegroups, the filegroups contain the read-only filegroups that are
+ *                   backed up as well
+ * @param filegroups the filegroups that are backed up, empty for the whole database
+ */
+public record FilegroupSelection(boolean readWrite, List<Filegroup> filegroups) {
+    public static final FilegroupSelection DATABASE = new FilegroupSelection(false, List.of());
+
+    public boolean isDatabase() {
+        return !readWrite && filegroups.isEmpty();
+    }
+
+    /**
+     * The part of the BACKUP DATABASE statement between the database and TO, empty for the whole database.
+     */
+    public String clause() {
+        var explicit = StreamEx.of(filegroups)
+                .filter(fg -> !readWrite || fg.readOnly())
+                .map(fg -> "FILEGROUP = N'" + fg.name().replace("'", "''") + "'");
+        return (readWrite ? explicit.prepend("READ_WRITE_FILEGROUPS") : explicit).joining(", ", " ", "").stripTrailing();
+    }
+
+    /**
+     * Bytes in use by the filegroups that are backed up.
+     */
+    public long used() {
+        return StreamEx.of(filegroups).mapToLong(Filegroup::used).sum();
+    }
+}
@@ -0,0 +1,172 @@
+package dev.niels.sqlbackuprestore.backup;
+
+import com.intellij.util.net.ssl.CertificateManager;
+import org.jetbrains.annotations.Nullable;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.SAXException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Lists the objects of a bucket for the bucket browser, SQL Server itself can't list them. Requests are signed with
+ * AWS signature version 4 and use path-style addressing so S3 compatible storage (i.e. MinIO) works as well.
+ */
+public class S3Client {
+    private static final DateTimeFormatter AMZ_DATE = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+    private static final String EMPTY_HASH = "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+    private final String endpoint;
+    private final String region;
+    private final String accessKey;
+    private final String secretKey;
+    private final HttpClient http;
+
+    public S3Client(String endpoint, String region, String accessKey, String secretKey) {
+        this.endpoint = endpoint;
+        this.region = region;
+        this.accessKey = accessKey;
+        this.secretKey = secretKey;
+        http = HttpClient.newBuilder()
+                .sslContext(CertificateManager.getInstance().getSslContext())
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    public record S3Object(String key, long size) {
+    }
+
+    /**
+     * All objects in the bucket that start with the prefix.
+     */
+    public List<S3Object> list(String bucket, String prefix) throws IOException, InterruptedException {
+        var result = new ArrayList<S3Object>();
+        String token = null;
+        do {
+            var query = new TreeMap<String, String>();
+            query.put("list-type", "2");
+            query.put("prefix", prefix);
+            if (token != null) {
+                query.put("continuation-token", token);
+            }
+            var document = parse(get("/" + bucket, query));
+            var contents = document.getElementsByTagName("Contents");
+            for (var i = 0; i < contents.getLength(); i++) {
+                var element = (Element) contents.item(i);
+                result.add(new S3Object(text(element, "Key"), Long.parseLong(text(element, "Size"))));
+            }
+            token = "true".equals(text(document.getDocumentElement(), "IsTruncated")) ? text(document.getDocumentElement(), "NextContinuationToken") : null;
+        } while (token != null);
+        return result;
+    }
+
+    private byte[] get(String path, Map<String, String> query) throws IOException, InterruptedException {
+        var now = ZonedDateTime.now(ZoneOffset.UTC);
+        var amzDate = now.format(AMZ_DATE);
+        var date = amzDate.substring(0, 8);
+        var canonicalQuery = String.join("&", query.entrySet().stream().map(e -> encode(e.getKey()) + "=" + encode(e.getValue())).toList());
+        var canonicalRequest = String.join("\n",
+                "GET",
+                path,
+                canonicalQuery,
+                "host:" + endpoint,
+                "x-amz-content-sha256:" + EMPTY_HASH,
+                "x-amz-date:" + amzDate,
+                "",
+                "host;x-amz-content-sha256;x-amz-date",
+                EMPTY_HASH);
+        var scope = date + "/" + region + "/s3/aws4_request";
+        var stringToSign = String.join("\n", "AWS4-HMAC-SHA256", amzDate, scope, hex(sha256(canonicalRequest)));
+
+        String signature;
+        try {
+            var key = hmac(("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8), date);
+            key = hmac(key, region);
+            key = hmac(key, "s3");
+            key = hmac(key, "aws4_request");
+            signature = hex(hmac(key, stringToSign));
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Unable to sign the request", e);
+        }
+
+        var request = HttpRequest.newBuilder(URI.create("https://" + endpoint + path + "?" + canonicalQuery))
+                .timeout(Duration.ofSeconds(30))
+                .header("x-amz-content-sha256", EMPTY_HASH)
+                .header("x-amz-date", amzDate)
+                .header("Authorization", "AWS4-HMAC-SHA256 Credential=" + accessKey + "/" + scope + ", SignedHeaders=host;x-amz-content-sha256;x-amz-date, Signature=" + signature)
+                .GET()
+                .build();
+        var response = http.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            var error = parse(response.body());
+            throw new IOException(response.statusCode() + ": " + (error == null ? "" : text(error.getDocumentElement(), "Message")));
+        }
+        return response.body();
+    }
+
+    private static @Nullable Document parse(byte[] xml) throws IOException {
+        if (xml.length == 0) {
+            return null;
+        }
+        try {
+            var factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            return factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml));
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("Unexpected response from the storage", e);
+        }
+    }
+
+    private static String text(Element element, String tag) {
+        var nodes = element.getElementsByTagName(tag);
+        return nodes.getLength() == 0 ? "" : nodes.item(0).getTextContent();
+    }
+
+    /**
+     * URI encoding of signature version 4, only the unreserved characters are kept.
+     */
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8).replace("+", "%20").replace("*", "%2A").replace("%7E", "~");
+    }
+
+    private static byte[] sha256(String value) throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static byte[] hmac(byte[] key, String value) throws GeneralSecurityException {
+        var mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key, "HmacSHA256"));
+        return mac.doFinal(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String hex(byte[] bytes) {
+        return HexFormat.of().formatHex(bytes);
+    }
+}
@@ -0,0 +1,50 @@
+package dev.niels.sqlbackuprestore.backup;
+
+import com.intellij.credentialStore.CredentialAttributes;
+import com.intellij.credentialStore.CredentialAttributesKt;
+import com.intellij.credentialStore.Credentials;
+import com.intellij.ide.passwordSafe.PasswordSafe;
+import dev.niels.sqlbackuprestore.query.Client;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Access keys of S3 buckets. They are kept in the password safe of the IDE and copied into a server credential named
+ * after the bucket before a backup or restore uses it.
+ */
+public final class S3Credentials {
+    private static final String SERVICE = "SQLServer Backup And Restore";
+
+    private S3Credentials() {
+    }
+
+    public static @Nullable Credentials get(S3Location location) {
+        return PasswordSafe.getInstance().get(attributes(location));
+    }
+
+    public static void set(S3Location location, String accessKey, String secretKey) {
+        PasswordSafe.getInstance().set(attributes(location), new Credentials(accessKey, secretKey));
+    }
+
+    /**
+     * Create or update the server credential of the bucket from the stored access key.
+     */
+    public static CompletableFuture<?> apply(Client c, S3Location location) {
+        var credentials = get(location);
+        if (credentials == null || credentials.getUserName() == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("There is no access key for " + location.credentialName()));
+        }
+        var name = location.credentialName().replace("]", "]]");
+        var secret = (credentials.getUserName() + ":" + credentials.getPasswordAsString()).replace("'", "''");
+        return c.execute(String.format("""
+                IF EXISTS (SELECT 1 FROM sys.credentials WHERE name = N'%1$s')
+                    ALTER CREDENTIAL [%2$s] WITH IDENTITY = 'S3 Access Key', SECRET = N'%3$s'
+                ELSE
+                    CREATE CREDENTIAL [%2$s] WITH IDENTITY = 'S3 Access Key', SECRET = N'%3$s'""", location.credentialName().replace("'", "''"), name, secret));
+    }
+
+    private static CredentialAttributes attributes(S3Location location) {
+        return new CredentialAttributes(CredentialAttributesKt.generateServiceName(SERVICE, location.credentialName()));
+    }
+}
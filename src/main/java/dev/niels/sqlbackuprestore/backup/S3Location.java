@@ -0,0 +1,35 @@
+package dev.niels.sqlbackuprestore.backup;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An object in S3 compatible storage as SQL Server addresses it: s3://endpoint[:port]/bucket/key. The credential for
+ * the bucket is named after the URL up to the bucket.
+ */
+public record S3Location(String endpoint, String bucket, String key) {
+    public static final String SCHEME = "s3://";
+
+    public static @Nullable S3Location parse(String url) {
+        if (!StringUtils.startsWithIgnoreCase(url, SCHEME)) {
+            return null;
+        }
+        var parts = StringUtils.removeStartIgnoreCase(url, SCHEME).split("/", 3);
+        if (parts.length < 2) {
+            return null;
+        }
+        return new S3Location(parts[0], parts[1], parts.length > 2 ? parts[2] : "");
+    }
+
+    public S3Location withKey(String key) {
+        return new S3Location(endpoint, bucket, key);
+    }
+
+    public String credentialName() {
+        return SCHEME + endpoint + "/" + bucket;
+    }
+
+    public String url() {
+        return credentialName() + "/" + key;
+    }
+}
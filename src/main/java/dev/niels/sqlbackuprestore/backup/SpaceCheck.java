@@ -0,0 +1,150 @@
+package dev.niels.sqlbackuprestore.backup;
+
+import dev.niels.sqlbackuprestore.action.Util;
+import dev.niels.sqlbackuprestore.query.Client;
+import dev.niels.sqlbackuprestore.ui.SQLHelper;
+import lombok.extern.slf4j.Slf4j;
+import one.util.streamex.EntryStream;
+import one.util.streamex.StreamEx;
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+/**
+ * Checks before a backup starts whether it fits on the volumes it is written to. The size is estimated from the pages
+ * that the backup reads and, for compressed backups, the compression ratio of the last backups of the database. Paths
+ * that are not on one of the fixed drives of the server (i.e. network shares) are not checked.
+ */
+@Slf4j
+public class SpaceCheck {
+    private static final long MB = 1024L * 1024;
+    private static final int HISTORY = 5;
+
+    private SpaceCheck() {
+    }
+
+    /**
+     * @return why the backup doesn't fit, null when it fits or when it couldn't be determined
+     */
+    public static @Nullable String check(Client c, String database, BackupMode mode, boolean compressed, List<String> stripes) {
+        return check(c, database, mode, compressed, stripes, FilegroupSelection.DATABASE);
+    }
+
+    /**
+     * @param filegroups the part of the database that is backed up
+     * @see #check(Client, String, BackupMode, boolean, List)
+     */
+    public static @Nullable String check(Client c, String database, BackupMode mode, boolean compressed, List<String> stripes, FilegroupSelection filegroups) {
+        try {
+            var size = estimate(c, database, mode, compressed, filegroups).get(30, TimeUnit.SECONDS);
+            var free = StreamEx.of(SQLHelper.getDrives(c))
+                    .mapToEntry(d -> normalize((String) d.get("Name")), d -> d.get("Size") instanceof Number n ? n.longValue() * MB : 0L)
+                    .filterKeys(StringUtils::isNotEmpty)
+                    .toMap((a, b) -> a);
+            var perStripe = size / stripes.size();
+            var needed = StreamEx.of(stripes)
+                    .map(s -> drive(free, s))
+                    .nonNull()
+                    .groupingBy(d -> d, Collectors.summingLong(d -> perStripe));
+
+            var full = EntryStream.of(needed).filterKeyValue((drive, bytes) -> bytes > free.get(drive)).keys().toList();
+            if (full.isEmpty()) {
+                return null;
+            }
+            var drive = full.get(0);
+            var alternatives = EntryStream.of(free)
+                    .filterValues(bytes -> bytes > size)
+                    .reverseSorted(Map.Entry.comparingByValue())
+                    .mapKeyValue((d, bytes) -> d + " (" + Util.humanReadableByteCountSI(bytes) + " free)")
+                    .joining(", ");
+            return String.format("The backup of %s is estimated at %s%s, but only %s is free on %s.%n%s",
+                    database,
+                    Util.humanReadableByteCountSI(needed.get(drive)),
+                    stripes.size() > 1 ? " for the stripes on that drive" : "",
+                    Util.humanReadableByteCountSI(free.get(drive)),
+                    drive,
+                    alternatives.isEmpty() ? "None of the drives of the server has enough free space." : "Choose a file on another drive: " + alternatives + ".");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException | RuntimeException e) {
+            log.warn("Unable to check the free space for the backup of {}", database, e);
+        }
+        return null;
+    }
+
+    /**
+     * Estimated size of the backup in bytes.
+     */
+    public static CompletableFuture<Long> estimate(Client c, String database, BackupMode mode, boolean compressed) {
+        return estimate(c, database, mode, compressed, FilegroupSelection.DATABASE);
+    }
+
+    /**
+     * Estimated size of the backup of a part of the database in bytes.
+     */
+    public static CompletableFuture<Long> estimate(Client c, String database, BackupMode mode, boolean compressed, FilegroupSelection filegroups) {
+        var ratio = compressed ? compressionRatio(c, database, mode) : CompletableFuture.completedFuture(1d);
+        var pages = mode != BackupMode.DIFFERENTIAL && !filegroups.isDatabase() ? CompletableFuture.completedFuture(filegroups.used()) : pages(c, database, mode);
+        return pages.thenCombine(ratio, (bytes, r) -> (long) (bytes * r));
+    }
+
+    /**
+     * Bytes that the backup reads: the used pages of the database, the changed extents for a differential backup or
+     * the used part of the log for a log backup.
+     */
+    private static CompletableFuture<Long> pages(Client c, String database, BackupMode mode) {
+        var used = "SELECT SUM(CAST(used_pages AS bigint)) * 8192 AS size FROM sys.allocation_units";
+        var query = switch (mode) {
+            // modified_extent_page_count is available from SQL2016 SP2, fall back to a full backup
+            case DIFFERENTIAL -> "SELECT SUM(CAST(modified_extent_page_count AS bigint)) * 8192 AS size FROM sys.dm_db_file_space_usage";
+            case LOG -> "SELECT used_log_space_in_bytes AS size FROM sys.dm_db_log_space_usage";
+            default -> used;
+        };
+        return number(c, String.format("USE [%s] %s", database, query))
+                .thenCompose(size -> size != null || query.equals(used) ? CompletableFuture.completedFuture(size) : number(c, String.format("USE [%s] %s", database, used)))
+                .thenApply(size -> size == null ? 0L : size.longValue());
+    }
+
+    /**
+     * Average ratio of the last compressed backups of the same kind, 1 when the database has none.
+     */
+    private static CompletableFuture<Double> compressionRatio(Client c, String database, BackupMode mode) {
+        var type = switch (mode) {
+            case DIFFERENTIAL -> "I";
+            case LOG -> "L";
+            default -> "D";
+        };
+        return number(c, String.format("""
+                        SELECT SUM(compressed_backup_size) / NULLIF(SUM(backup_size), 0) AS size FROM (
+                            SELECT TOP %d compressed_backup_size, backup_size FROM msdb.dbo.backupset
+                            WHERE database_name = N'%s' AND type = '%s' AND compressed_backup_size < backup_size
+                            ORDER BY backup_finish_date DESC) b""", HISTORY, database, type))
+                .thenApply(ratio -> ratio == null || ratio.doubleValue() <= 0 ? 1d : ratio.doubleValue());
+    }
+
+    private static CompletableFuture<Number> number(Client c, String query) {
+        return c.getResult(query).thenApply(rows -> rows.isEmpty() || !(rows.get(0).get("size") instanceof Number n) ? null : n);
+    }
+
+    /**
+     * The drive that the path is on, null when it isn't on a fixed drive.
+     */
+    private static @Nullable String drive(Map<String, Long> drives, String path) {
+        var normalized = normalize(path);
+        return StreamEx.ofKeys(drives)
+                .filter(d -> StringUtils.startsWithIgnoreCase(normalized, d))
+                .maxBy(String::length)
+                .orElse(null);
+    }
+
+    private static String normalize(String path) {
+        return StringUtils.defaultString(path).replace('/', '\\');
+    }
+}
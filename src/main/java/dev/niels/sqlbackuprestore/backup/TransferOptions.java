@@ -0,0 +1,38 @@
+package dev.niels.sqlbackuprestore.backup;
+
+import dev.niels.sqlbackuprestore.query.Client;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * BUFFERCOUNT, MAXTRANSFERSIZE and BLOCKSIZE of a backup. SQL Server uses a handful of 1MB buffers by default, larger
+ * databases and backups to multiple stripes are faster with more and larger buffers. The buffers take
+ * BUFFERCOUNT * MAXTRANSFERSIZE of memory outside the buffer pool, which is kept below {@link #MAX_MEMORY}.
+ */
+public record TransferOptions(int bufferCount, int maxTransferSize, int blockSize) {
+    private static final int MB = 1024 * 1024;
+    private static final long GB = 1024L * MB;
+    private static final long MAX_MEMORY = 512L * MB;
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * Options for a database of the given size that is written to the given number of stripes.
+     */
+    public static TransferOptions forSize(long databaseSize, int stripes) {
+        var maxTransferSize = databaseSize >= 10 * GB ? 4 * MB : databaseSize >= GB ? 2 * MB : MB;
+        var buffersPerStripe = databaseSize >= 100 * GB ? 16 : databaseSize >= 10 * GB ? 8 : 4;
+        var bufferCount = (int) Math.min(MAX_MEMORY / maxTransferSize, Math.max(2L, (long) buffersPerStripe * stripes));
+        return new TransferOptions(bufferCount, maxTransferSize, BLOCK_SIZE);
+    }
+
+    /**
+     * Allocated size of the data and log files of the database in bytes.
+     */
+    public static CompletableFuture<Long> databaseSize(Client c, String database) {
+        return c.getSingle("select sum(cast(size as bigint)) * 8192 AS size from sys.master_files where database_id = DB_ID(N'" + database + "')", "size", Long.class);
+    }
+
+    public String toSql() {
+        return String.format(", BUFFERCOUNT = %s, MAXTRANSFERSIZE = %s, BLOCKSIZE = %s", bufferCount, maxTransferSize, blockSize);
+    }
+}
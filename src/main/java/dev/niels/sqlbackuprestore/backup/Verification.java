@@ -0,0 +1,90 @@
+package dev.niels.sqlbackuprestore.backup;
+
+import com.intellij.notification.Notification;
+import com.intellij.notification.NotificationType;
+import com.intellij.notification.Notifications.Bus;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.Project;
+import dev.niels.sqlbackuprestore.AppSettingsState;
+import dev.niels.sqlbackuprestore.Constants;
+import dev.niels.sqlbackuprestore.query.Auditor.MessageType;
+import dev.niels.sqlbackuprestore.query.Client;
+import dev.niels.sqlbackuprestore.query.ProgressTask;
+import dev.niels.sqlbackuprestore.query.QueryHelper;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Runs RESTORE VERIFYONLY WITH CHECKSUM for a backup that was just made, on its own session so the next backup doesn't
+ * wait for it. The result is shown as a notification and kept in the verification history.
+ */
+public class Verification {
+    private static final int HISTORY = 100;
+
+    private Verification() {
+    }
+
+    /**
+     * @param sibling the connection of the backup, the verification uses a new session for the same data source
+     * @param paths   the files (stripes) of the backup
+     * @return completes with whether the backup is valid
+     */
+    public static CompletableFuture<Boolean> verify(@Nullable Project project, Client sibling, String database, List<String> paths) {
+        var result = new CompletableFuture<Boolean>();
+        ApplicationManager.getApplication().invokeLater(() -> new ProgressTask(project, "Verifying backup of " + database, false, consumer -> {
+            try (var c = QueryHelper.client(sibling)) {
+                c.setTitle("Verify backup of " + database);
+                var errors = new CopyOnWriteArrayList<String>();
+                c.addWarningConsumer(consumer);
+                c.addWarningConsumer((type, msg) -> {
+                    if (type == MessageType.ERROR) {
+                        errors.add(msg);
+                    }
+                });
+
+                var unload = BackupDevice.isUrl(paths.get(0)) ? "" : ", NOUNLOAD";
+                try {
+                    c.execute("RESTORE VERIFYONLY FROM " + BackupDevice.of(paths) + " WITH CHECKSUM" + unload + ", STATS = 10").get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    errors.add("Verification interrupted");
+                } catch (ExecutionException e) {
+                    errors.add(e.getMessage());
+                }
+                result.complete(finished(c, database, paths, errors));
+            }
+        }).queue());
+        return result;
+    }
+
+    private static boolean finished(Client c, String database, List<String> paths, List<String> errors) {
+        var valid = errors.isEmpty();
+        var message = valid ? "The backup of " + database + " is valid" : String.join("\n", errors);
+        var entry = new VerificationResult()
+                .setDataSource(c.getDataSource().getName())
+                .setDatabase(database)
+                .setPaths(String.join(",", paths))
+                .setFinished(System.currentTimeMillis())
+                .setValid(valid)
+                .setMessage(message);
+
+        var history = AppSettingsState.getInstance().getVerificationHistory();
+        synchronized (history) {
+            history.add(0, entry);
+            while (history.size() > HISTORY) {
+                history.remove(history.size() - 1);
+            }
+        }
+
+        if (valid) {
+            Bus.notify(new Notification(Constants.NOTIFICATION_GROUP, "Backup verified", message + ": " + String.join(", ", paths), NotificationType.INFORMATION));
+        } else {
+            Bus.notify(new Notification(Constants.NOTIFICATION_GROUP, Constants.ERROR, "Verification of the backup of " + database + " failed:\n" + message, NotificationType.ERROR));
+        }
+        return valid;
+    }
+}
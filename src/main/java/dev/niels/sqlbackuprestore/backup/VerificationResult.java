@@ -0,0 +1,22 @@
+package dev.niels.sqlbackuprestore.backup;
+
+import lombok.Data;
+
+/**
+ * Entry in the verification history of the settings.
+ */
+@Data
+public class VerificationResult {
+    private String dataSource;
+    private String database;
+    /**
+     * The files of the backup, separated by commas
+     */
+    private String paths;
+    /**
+     * End of the verification in epoch milliseconds
+     */
+    private long finished;
+    private boolean valid;
+    private String message;
+}
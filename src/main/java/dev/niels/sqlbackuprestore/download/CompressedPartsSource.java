@@ -0,0 +1,51 @@
+package dev.niels.sqlbackuprestore.download;
+
+import dev.niels.sqlbackuprestore.query.Client;
+import lombok.RequiredArgsConstructor;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Compresses every part on the server on its own instead of compressing the complete file before the download
+ * starts. The server only holds a single part in memory and the first part is available immediately. COMPRESS
+ * returns a gzip member, which is available since SQL2016.
+ */
+@RequiredArgsConstructor
+class CompressedPartsSource implements DownloadSource {
+    private final DownloadSource source;
+
+    @Override
+    public String getPath() {
+        return source.getPath();
+    }
+
+    @Override
+    public boolean isCompressed() {
+        return true;
+    }
+
+    @Override
+    public boolean isCompressedPerPart() {
+        return true;
+    }
+
+    @Override
+    public CompletableFuture<?> prepare(Client c) {
+        return source.prepare(c);
+    }
+
+    @Override
+    public CompletableFuture<Long> size(Client c) {
+        return source.size(c);
+    }
+
+    @Override
+    public String partQuery(Range range) {
+        return "select COMPRESS(p.part) AS part from (" + source.partQuery(range) + ") p";
+    }
+
+    @Override
+    public CompletableFuture<?> cleanup(Client c) {
+        return source.cleanup(c);
+    }
+}
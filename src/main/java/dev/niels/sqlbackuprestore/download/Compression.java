@@ -0,0 +1,27 @@
+package dev.niels.sqlbackuprestore.download;
+
+/**
+ * Where a download is compressed.
+ */
+public enum Compression {
+    /**
+     * Download the file as is
+     */
+    NONE,
+    /**
+     * COMPRESS the file on the server before downloading
+     */
+    SERVER,
+    /**
+     * COMPRESS every part on the server on its own, the parts are appended as separate gzip members
+     */
+    SERVER_PARTS,
+    /**
+     * Download the file as is and compress it locally while it's being written
+     */
+    CLIENT;
+
+    public boolean isCompressed() {
+        return this != NONE;
+    }
+}
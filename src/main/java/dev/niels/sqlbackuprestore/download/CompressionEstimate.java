@@ -0,0 +1,88 @@
+package dev.niels.sqlbackuprestore.download;
+
+import dev.niels.sqlbackuprestore.AppSettingsState;
+import dev.niels.sqlbackuprestore.action.Util;
+import dev.niels.sqlbackuprestore.query.Client;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import one.util.streamex.LongStreamEx;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Estimates how well a file on the server compresses by compressing a couple of samples spread over the file. A
+ * backup that was made WITH COMPRESSION hardly compresses any further, a plain backup usually does. Together with the
+ * last measured download speed of the data source this gives the time that compressing would save.
+ */
+@Getter
+@RequiredArgsConstructor
+public class CompressionEstimate {
+    /**
+     * Below this saving compressing isn't worth the effort
+     */
+    public static final double MIN_SAVING = 0.02;
+    private static final int SAMPLES = 4;
+    private static final int SAMPLE_SIZE = 1024 * 1024;
+    private final long size;
+    private final long sampled;
+    private final long sampledCompressed;
+    /**
+     * Last measured download speed of the data source in bytes per second, 0 when unknown
+     */
+    private final long bytesPerSecond;
+
+    /**
+     * Compress samples of the file on the server (COMPRESS is available since SQL2016).
+     *
+     * @return the estimate, or null if the file could not be sampled
+     */
+    public static CompletableFuture<CompressionEstimate> sample(Client c, String path) {
+        var speed = AppSettingsState.getInstance().getDownloadSpeeds().getOrDefault(c.getDataSource().getUniqueId(), 0L);
+        return DownloadSource.fileSize(c, path).thenCompose(size -> {
+            if (size == null || size == 0) {
+                return CompletableFuture.completedFuture(null);
+            }
+            var step = Math.max(1, (size - SAMPLE_SIZE) / Math.max(1, SAMPLES - 1));
+            var offsets = LongStreamEx.range(0, SAMPLES).map(i -> Math.min(i * step, Math.max(0, size - SAMPLE_SIZE)) + 1).distinct().mapToObj(o -> "(" + o + ")").joining(",");
+            return c.getResult("select sum(cast(DATALENGTH(s.part) as bigint)) AS raw, sum(cast(DATALENGTH(COMPRESS(s.part)) as bigint)) AS compressed from (\n" +
+                            "    select substring(x.BulkColumn, o.start, " + SAMPLE_SIZE + ") AS part from OPENROWSET(BULK N'" + path + "', SINGLE_BLOB) x cross join (values " + offsets + ") o(start)\n" +
+                            ") s")
+                    .thenApply(rows -> {
+                        if (rows.isEmpty() || !(rows.get(0).get("raw") instanceof Number raw) || !(rows.get(0).get("compressed") instanceof Number compressed) || raw.longValue() == 0) {
+                            return null;
+                        }
+                        return new CompressionEstimate(size, raw.longValue(), compressed.longValue(), speed);
+                    });
+        });
+    }
+
+    /**
+     * Part of the size that compressing would save, between 0 and 1
+     */
+    public double getSaving() {
+        return Math.max(0, 1 - sampledCompressed / (double) sampled);
+    }
+
+    public long getSavedBytes() {
+        return (long) (size * getSaving());
+    }
+
+    /**
+     * Seconds saved on the transfer, -1 when the download speed of the data source is not known
+     */
+    public long getSavedSeconds() {
+        return bytesPerSecond <= 0 ? -1 : getSavedBytes() / bytesPerSecond;
+    }
+
+    public boolean isWorthIt() {
+        return getSaving() >= MIN_SAVING;
+    }
+
+    public String describe() {
+        var result = String.format("Samples of the file compress to %.0f%% of their size, compressing would save about %s", 100 - getSaving() * 100, Util.humanReadableByteCountSI(getSavedBytes()));
+        if (getSavedSeconds() >= 0) {
+            result += String.format(" (about %s seconds at the last download speed of %s/s)", getSavedSeconds(), Util.humanReadableByteCountSI(bytesPerSecond));
+        }
+        return result + ".";
+    }
+}
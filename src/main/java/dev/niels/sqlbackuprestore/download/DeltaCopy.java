@@ -0,0 +1,110 @@
+package dev.niels.sqlbackuprestore.download;
+
+import com.intellij.openapi.progress.ProgressIndicator;
+import dev.niels.sqlbackuprestore.action.Util;
+import dev.niels.sqlbackuprestore.query.Client;
+import lombok.RequiredArgsConstructor;
+import one.util.streamex.StreamEx;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Reuses the blocks of a previous download of the same file. The server calculates the hash of every block and blocks
+ * that have the same hash in the previous file are copied locally, only the other blocks are downloaded afterward.
+ * Blocks are compared at the same position, which suits backups of a database in which most pages did not change.
+ */
+@RequiredArgsConstructor
+class DeltaCopy {
+    static final int BLOCK_SIZE = 1024 * 1024;
+    /**
+     * Number of blocks that are hashed in a single query
+     */
+    private static final int BATCH_SIZE = 64;
+    private final Client connection;
+    private final DownloadSource source;
+    private final DownloadManifest manifest;
+    private final File previous;
+    private final PartSink sink;
+    private long compared;
+    private long reused;
+
+    /**
+     * Copy the blocks of the missing ranges that didn't change, the manifest records them as completed.
+     *
+     * @return the number of bytes that were reused
+     */
+    CompletableFuture<Long> copy(ProgressIndicator indicator, List<Range> missing) {
+        FileChannel channel;
+        long length;
+        try {
+            channel = FileChannel.open(previous.toPath(), StandardOpenOption.READ);
+            length = channel.size();
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        var blocks = StreamEx.of(missing).flatCollection(r -> r.split(BLOCK_SIZE)).filter(r -> r.end() <= length).toList();
+
+        CompletableFuture<?> chain = CompletableFuture.completedFuture(null);
+        for (var batch : StreamEx.ofSubLists(blocks, BATCH_SIZE)) {
+            chain = chain.thenCompose(x -> indicator.isCanceled() ? CompletableFuture.completedFuture(null) : compare(indicator, channel, batch));
+        }
+        return chain.handle((x, t) -> {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Only read from
+            }
+            if (t != null) {
+                throw t instanceof RuntimeException re ? re : new IllegalStateException(t);
+            }
+            return reused;
+        });
+    }
+
+    private CompletableFuture<?> compare(ProgressIndicator indicator, FileChannel channel, List<Range> batch) {
+        var byStart = StreamEx.of(batch).toMap(Range::start, r -> r);
+        var query = StreamEx.of(batch)
+                .map(r -> "select CAST(" + r.start() + " as bigint) AS start, HASHBYTES('SHA2_256', p.part) AS hash from (" + source.partQuery(r) + ") p")
+                .joining("\nunion all\n");
+        return connection.getResult(query).thenAccept(rows -> {
+            for (var row : rows) {
+                if (row.get("start") instanceof Number start && row.get("hash") instanceof byte[] hash && byStart.containsKey(start.longValue())) {
+                    reuse(channel, byStart.get(start.longValue()), hash);
+                }
+            }
+            compared += StreamEx.of(batch).mapToLong(Range::length).sum();
+            indicator.setText2(String.format("Compared %s with the previous download, %s unchanged", Util.humanReadableByteCountSI(compared), Util.humanReadableByteCountSI(reused)));
+        });
+    }
+
+    private void reuse(FileChannel channel, Range range, byte[] remote) {
+        try {
+            var block = ByteBuffer.allocate((int) range.length());
+            while (block.hasRemaining() && channel.read(block, range.start() + block.position()) >= 0) {
+                // Read until the block is full
+            }
+            var local = MessageDigest.getInstance("SHA-256").digest(block.array());
+            if (MessageDigest.isEqual(local, remote)) {
+                sink.reserve(range.start(), range.length());
+                sink.write(range.start(), block.array());
+                sink.completed(range);
+                manifest.hashed(range, HexFormat.of().formatHex(local));
+                reused += range.length();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
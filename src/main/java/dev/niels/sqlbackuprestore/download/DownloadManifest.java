@@ -0,0 +1,214 @@
+package dev.niels.sqlbackuprestore.download;
+
+import lombok.Getter;
+import one.util.streamex.EntryStream;
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sidecar file next to a download that keeps track of the parts that were already written. Allows an interrupted
+ * download to continue with only the missing parts.
+ */
+public class DownloadManifest {
+    public static final String EXTENSION = ".manifest";
+    @Getter
+    private final File target;
+    /**
+     * Unique id of the data source the file is downloaded from, the same path on another server is a different file
+     */
+    @Getter
+    private final String dataSource;
+    @Getter
+    private final String source;
+    @Getter
+    private final Compression compression;
+    @Getter
+    private long size;
+    /**
+     * Number of bytes in the target, only differs from the completed ranges when the target is compressed locally.
+     */
+    @Getter
+    private long written;
+    /**
+     * Completed ranges, start to (exclusive) end. Ranges never overlap or touch.
+     */
+    private final TreeMap<Long, Long> completed = new TreeMap<>();
+    /**
+     * Verified SHA-256 hashes of downloaded parts, by start of the part.
+     */
+    private final TreeMap<Long, PartHash> hashes = new TreeMap<>();
+    private long lastSave;
+
+    public DownloadManifest(File target, String dataSource, String source, Compression compression) {
+        this.target = target;
+        this.dataSource = dataSource;
+        this.source = source;
+        this.compression = compression;
+    }
+
+    /**
+     * Read the manifest for the given file, which can either be the downloaded file or the manifest itself.
+     *
+     * @return the manifest or null if there is none
+     */
+    public static @Nullable DownloadManifest load(File file) throws IOException {
+        var manifestFile = StringUtils.endsWithIgnoreCase(file.getName(), EXTENSION) ? file : new File(file.getAbsolutePath() + EXTENSION);
+        if (!manifestFile.exists()) {
+            return null;
+        }
+
+        var properties = new Properties();
+        try (var fis = new FileInputStream(manifestFile)) {
+            properties.load(fis);
+        }
+
+        var target = new File(StringUtils.removeEndIgnoreCase(manifestFile.getAbsolutePath(), EXTENSION));
+        var result = new DownloadManifest(target, properties.getProperty("dataSource", ""), properties.getProperty("source"), Compression.valueOf(properties.getProperty("compression", Compression.NONE.name())));
+        result.size = Long.parseLong(properties.getProperty("size", "0"));
+        result.written = Long.parseLong(properties.getProperty("written", "0"));
+        for (var range : StringUtils.split(properties.getProperty("completed", ""), ',')) {
+            var bounds = StringUtils.split(range, '-');
+            result.completed.put(Long.parseLong(bounds[0]), Long.parseLong(bounds[1]));
+        }
+        for (var name : properties.stringPropertyNames()) {
+            if (name.startsWith("hash.")) {
+                var start = Long.parseLong(StringUtils.removeStart(name, "hash."));
+                var value = StringUtils.split(properties.getProperty(name), ':');
+                result.hashes.put(start, new PartHash(new Range(start, Long.parseLong(value[0])), value[1]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Set the size of the source, resets the completed parts if the download is not resumed or when the size is
+     * different from the size that was recorded.
+     */
+    synchronized void start(long size, boolean resume) throws IOException {
+        if (!resume || this.size != size) {
+            completed.clear();
+            hashes.clear();
+            written = 0;
+        }
+        this.size = size;
+        flush();
+    }
+
+    synchronized boolean isStarted() {
+        return !completed.isEmpty();
+    }
+
+    synchronized void completed(Range range, long written) throws IOException {
+        this.written = written;
+        completed(range);
+    }
+
+    synchronized void completed(Range range) throws IOException {
+        var start = range.start();
+        var end = range.end();
+
+        var before = completed.floorEntry(start);
+        if (before != null && before.getValue() >= start) {
+            start = before.getKey();
+            end = Math.max(end, before.getValue());
+            completed.remove(before.getKey());
+        }
+        var after = completed.ceilingEntry(start);
+        while (after != null && after.getKey() <= end) {
+            end = Math.max(end, after.getValue());
+            completed.remove(after.getKey());
+            after = completed.ceilingEntry(start);
+        }
+        completed.put(start, end);
+        save();
+    }
+
+    /**
+     * Record the verified hash of a part, replaces hashes of earlier attempts that started within the part.
+     */
+    synchronized void hashed(Range range, String hash) {
+        hashes.subMap(range.start(), range.end()).clear();
+        hashes.put(range.start(), new PartHash(range, hash));
+    }
+
+    synchronized List<PartHash> getHashes() {
+        return new ArrayList<>(hashes.values());
+    }
+
+    /**
+     * Write the manifest, even when it was saved less than a second ago.
+     */
+    synchronized void flush() throws IOException {
+        lastSave = 0;
+        save();
+    }
+
+    /**
+     * The ranges that are not yet downloaded.
+     */
+    synchronized List<Range> missing() {
+        var result = new ArrayList<Range>();
+        long position = 0;
+        for (var entry : completed.entrySet()) {
+            if (entry.getKey() > position) {
+                result.add(new Range(position, entry.getKey() - position));
+            }
+            position = Math.max(position, entry.getValue());
+        }
+        if (position < size) {
+            result.add(new Range(position, size - position));
+        }
+        return result;
+    }
+
+    public void delete() throws IOException {
+        Files.deleteIfExists(getFile().toPath());
+    }
+
+    private File getFile() {
+        return new File(target.getAbsolutePath() + EXTENSION);
+    }
+
+    /**
+     * Write to a temporary file first so that a crash while writing doesn't lose the manifest. Saves at most once per
+     * second, parts that are completed in between are downloaded again when the download is resumed.
+     */
+    private void save() throws IOException {
+        var now = System.nanoTime();
+        if (lastSave != 0 && now - lastSave < TimeUnit.SECONDS.toNanos(1)) {
+            return;
+        }
+        lastSave = now;
+
+        var properties = new Properties();
+        properties.setProperty("dataSource", dataSource);
+        properties.setProperty("source", source);
+        properties.setProperty("compression", compression.name());
+        properties.setProperty("size", Long.toString(size));
+        properties.setProperty("written", Long.toString(written));
+        properties.setProperty("completed", EntryStream.of(completed).join("-").joining(","));
+        hashes.values().forEach(h -> properties.setProperty("hash." + h.range().start(), h.range().length() + ":" + h.hash()));
+
+        var file = getFile();
+        var temp = new File(file.getAbsolutePath() + ".tmp");
+        try (var fos = new FileOutputStream(temp)) {
+            properties.store(fos, "Download of " + source);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    record PartHash(Range range, String hash) {
+    }
+}
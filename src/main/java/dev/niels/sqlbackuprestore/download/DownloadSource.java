@@ -0,0 +1,60 @@
+package dev.niels.sqlbackuprestore.download;
+
+import dev.niels.sqlbackuprestore.AppSettingsState;
+import dev.niels.sqlbackuprestore.query.Client;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The file on the server that is being downloaded and the way its parts are read.
+ */
+public interface DownloadSource {
+    /**
+     * Create the source for the given file. Files that are compressed as a whole and servers that don't allow reading
+     * parts of a file directly are staged in a temporary table.
+     */
+    static DownloadSource of(String path, Compression compression) {
+        var compressed = compression == Compression.SERVER;
+        var source = compressed || !AppSettingsState.getInstance().isDirectDownload() ? new StagedSource(path, compressed) : new FileSource(path);
+        if (compression == Compression.SERVER_PARTS) {
+            return new CompressedPartsSource(source);
+        }
+        return source;
+    }
+
+    /**
+     * Size of a file on the server without preparing a download for it.
+     */
+    static CompletableFuture<Long> fileSize(Client c, String path) {
+        return new FileSource(path).size(c);
+    }
+
+    String getPath();
+
+    boolean isCompressed();
+
+    /**
+     * When true every part is compressed on its own, the parts are not the given range of the file but a gzip member
+     * with the contents of the range.
+     */
+    default boolean isCompressedPerPart() {
+        return false;
+    }
+
+    /**
+     * Make the file available for downloading, must be executed on the connection that is passed to the DownloadTask.
+     */
+    CompletableFuture<?> prepare(Client c);
+
+    CompletableFuture<Long> size(Client c);
+
+    /**
+     * Query that selects the given range of the file in a column named 'part'.
+     */
+    String partQuery(Range range);
+
+    /**
+     * Remove everything that was created on the server for this download.
+     */
+    CompletableFuture<?> cleanup(Client c);
+}
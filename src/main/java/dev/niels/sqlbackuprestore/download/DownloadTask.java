@@ -0,0 +1,454 @@
+package dev.niels.sqlbackuprestore.download;
+
+import com.intellij.database.remote.jdbc.RemoteBlob;
+import com.intellij.notification.Notification;
+import com.intellij.notification.NotificationType;
+import com.intellij.notification.Notifications.Bus;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task.Backgroundable;
+import com.intellij.openapi.project.Project;
+import dev.niels.sqlbackuprestore.AppSettingsState;
+import dev.niels.sqlbackuprestore.Constants;
+import dev.niels.sqlbackuprestore.action.Util;
+import dev.niels.sqlbackuprestore.query.Client;
+import dev.niels.sqlbackuprestore.query.QueryHelper;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Downloads a file from the server. The file is split into parts which are fetched with substring queries on the
+ * {@link DownloadSource}. When parallel downloads are enabled, every extra session fetches its own parts and writes them
+ * at their own offset in the target file.
+ * Completed parts are recorded in a {@link DownloadManifest} so a failed download can be resumed later.
+ * When verification is enabled, the server calculates the hash of every part in the same query that returns it. Parts
+ * with a different local hash are downloaded again.
+ * With {@link Compression#SERVER_PARTS} every part arrives as its own gzip member which is appended in order.
+ * The download speed can be limited per data source, see {@link RateLimiter}.
+ * In delta mode the blocks that did not change since the previous download of the target are copied locally
+ * (see {@link DeltaCopy}).
+ * Received parts are written by a separate thread (see {@link PipelinedSink}) so fetching doesn't wait for the disk.
+ */
+@Slf4j
+public class DownloadTask extends Backgroundable {
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int MAX_RETRIES = 5;
+    private static final long RETRY_DELAY_MS = 1000;
+    public static final String DIGEST_EXTENSION = ".sha256";
+    public static final String PREVIOUS_EXTENSION = ".previous";
+    private final Client connection;
+    private final String path;
+    private final DownloadSource source;
+    private final File target;
+    private final DownloadManifest manifest;
+    private final int parallelism;
+    private final boolean verify;
+    private final boolean delta;
+    /**
+     * Progress that is shared with other downloads, null to show the progress of this download only
+     */
+    private TransferProgress progress;
+
+    /**
+     * @param connection the connection on which the source is prepared, will be closed when the download finishes
+     * @param source     the prepared source to download
+     * @param manifest   the manifest of the download, parts that are already completed in the manifest are skipped
+     */
+    public DownloadTask(@Nullable Project project, Client connection, DownloadSource source, DownloadManifest manifest) {
+        super(project, "Downloading " + source.getPath());
+        this.connection = connection;
+        this.path = source.getPath();
+        this.source = source;
+        this.target = manifest.getTarget();
+        this.manifest = manifest;
+        this.parallelism = Math.max(1, AppSettingsState.getInstance().getDownloadParallelism());
+        this.verify = AppSettingsState.getInstance().isVerifyDownload();
+        this.delta = AppSettingsState.getInstance().isDeltaDownload() && manifest.getCompression() == Compression.NONE;
+    }
+
+    /**
+     * Report the progress to a progress that is shared with other downloads on the same indicator.
+     */
+    DownloadTask withProgress(TransferProgress progress) {
+        this.progress = progress;
+        return this;
+    }
+
+    @Override
+    public void run(@NotNull ProgressIndicator indicator) {
+        var error = new AtomicBoolean(false);
+        try {
+            if (progress == null) {
+                indicator.setIndeterminate(false);
+                indicator.setFraction(0.0);
+            }
+
+            source.size(connection)
+                    .thenCompose(s -> download(indicator, s, error))
+                    .handle((x, t) -> {
+                        if (t != null) {
+                            log.warn("Download of {} failed", path, t);
+                        }
+                        return null;
+                    })
+                    .thenCompose(x -> source.cleanup(connection))
+                    .exceptionally(connection::close)
+                    .thenRun(connection::close)
+                    .thenRun(() -> cleanIfCancelled(indicator))
+                    .get();
+        } catch (Exception e) {
+            error.set(true);
+            Bus.notify(new Notification(Constants.NOTIFICATION_GROUP, "Unable to write", "Unable to write to " + path + ":\n" + e.getMessage(), NotificationType.ERROR));
+        }
+        finish(indicator, error.get());
+    }
+
+    private CompletableFuture<?> download(@NotNull ProgressIndicator indicator, Long s, AtomicBoolean error) {
+        PartSink sink;
+        try {
+            var resume = manifest.isStarted() && target.exists();
+            if (resume && manifest.getSize() != s) {
+                Bus.notify(new Notification(Constants.NOTIFICATION_GROUP, "Restarting download", path + " changed since the last download, starting from the beginning", NotificationType.WARNING));
+                resume = false;
+            }
+            if (!resume && delta && target.exists() && !getPrevious().exists()) {
+                // Keep the previous download to copy the unchanged blocks from. If a previous download is left over
+                // from an attempt that didn't complete, the target is a partial copy and the left over one is kept.
+                Files.move(target.toPath(), getPrevious().toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            manifest.start(s, resume);
+            sink = PartSink.open(manifest, resume);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        if (!delta || !getPrevious().exists()) {
+            return transfer(indicator, s, sink, error);
+        }
+        return new DeltaCopy(connection, source, manifest, getPrevious(), sink).copy(indicator, manifest.missing())
+                .handle((reused, t) -> {
+                    if (t != null) {
+                        log.warn("Unable to reuse {}, downloading everything", getPrevious(), t);
+                    } else {
+                        log.info("Reused {} bytes of {}", reused, getPrevious());
+                    }
+                    return null;
+                })
+                .thenCompose(x -> transfer(indicator, s, sink, error));
+    }
+
+    /**
+     * Download the ranges that are missing in the manifest with all sessions.
+     */
+    private CompletableFuture<?> transfer(@NotNull ProgressIndicator indicator, long s, PartSink sink, AtomicBoolean error) {
+        var transfer = new Transfer(indicator, sink, new RemainingRanges(manifest.missing()), PartSizer.create(connection, s), new RateLimiter(connection), progress != null ? progress : new TransferProgress(getTitle(), s), error);
+        transfer.progress().skip(indicator, s - transfer.parts().bytes());
+
+        // Every session takes the next part from the remaining ranges until everything is downloaded
+        var sessions = (int) Math.min(parallelism, Math.ceil(transfer.parts().bytes() / (double) transfer.sizer().getSize()));
+        var workers = new ArrayList<CompletableFuture<?>>();
+        for (var i = 0; i < sessions; i++) {
+            var client = i == 0 ? connection : QueryHelper.client(connection);
+            client.setTitle(getTitle() + " (" + (i + 1) + "/" + sessions + ")");
+            workers.add(downloadNext(client, transfer).whenComplete((x, t) -> {
+                if (client != connection) {
+                    client.close();
+                }
+            }));
+        }
+        return CompletableFuture.allOf(workers.toArray(CompletableFuture[]::new))
+                .thenRun(transfer.sizer()::remember)
+                .thenRun(() -> rememberSpeed(transfer))
+                .whenComplete((x, t) -> {
+                    try {
+                        sink.close();
+                    } catch (IOException e) {
+                        Bus.notify(new Notification(Constants.NOTIFICATION_GROUP, "Unable to write", "Unable to write to " + target + ":\n" + e.getMessage(), NotificationType.ERROR));
+                        error.set(true);
+                    }
+                });
+    }
+
+    /**
+     * Store the throughput of a download that transferred enough to be meaningful, used to estimate the time that
+     * compression saves on the next download.
+     */
+    private void rememberSpeed(Transfer transfer) {
+        var speed = transfer.progress().getBytesPerSecond();
+        if (!transfer.error().get() && speed > 0 && transfer.progress().getTransferred() >= PartSizer.MAX_SIZE) {
+            AppSettingsState.getInstance().getDownloadSpeeds().put(connection.getDataSource().getUniqueId(), speed);
+        }
+    }
+
+    /**
+     * Download the next part that is not yet taken by another session and continue with the one after that.
+     */
+    private CompletableFuture<?> downloadNext(Client client, Transfer transfer) {
+        // Allow cancelling and don't proceed if there was an error
+        if (transfer.error().get() || transfer.indicator().isCanceled()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        var range = transfer.parts().take(transfer.sizer().getSize());
+        if (range == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // Wait before requesting the part when the download is limited
+        var wait = transfer.limiter().reserve(range.length());
+        var part = wait <= 0 ? downloadPart(client, transfer, range, 0)
+                : CompletableFuture.runAsync(() -> {
+                }, CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS)).thenCompose(x -> downloadPart(client, transfer, range, 0));
+        return part.thenCompose(x -> downloadNext(client, transfer));
+    }
+
+    /**
+     * Get a single part and store it at its own position. When the part could not be retrieved (i.e. the connection
+     * dropped) or its hash doesn't match, it is retried a couple of times with an increasing delay.
+     */
+    private CompletableFuture<?> downloadPart(Client client, Transfer transfer, Range range, int attempt) {
+        var stored = new AtomicBoolean(false);
+        var started = System.nanoTime();
+        return client.withRows(partQuery(range), (cols, rows) -> {
+                    try {
+                        var digest = verify ? MessageDigest.getInstance("SHA-256") : null;
+                        if (source.isCompressedPerPart()) {
+                            writeCompressed(transfer.sink(), range, rows.get(0).getValue(0), digest);
+                        } else {
+                            write(transfer.sink(), range.start(), rows.get(0).getValue(0), digest);
+                        }
+                        if (digest != null && !verified(range, digest.digest(), rows.get(0).getValue(1))) {
+                            transfer.sink().discard(range);
+                            return;
+                        }
+                        transfer.sink().completed(range);
+                        stored.set(true);
+                        transfer.sizer().measured(range.length(), System.nanoTime() - started);
+                        transfer.progress().add(transfer.indicator(), range.length());
+                        transfer.indicator().setText2(details(transfer));
+                    } catch (Exception e) {
+                        Bus.notify(new Notification(Constants.NOTIFICATION_GROUP, "Unable to write", "Unable to write to " + target + ":\n" + e.getMessage(), NotificationType.ERROR));
+                        transfer.error().set(true);
+                    }
+                })
+                .handle((x, t) -> stored.get())
+                .thenCompose(ok -> {
+                    if (ok || transfer.error().get() || transfer.indicator().isCanceled()) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    if (attempt >= MAX_RETRIES) {
+                        Bus.notify(new Notification(Constants.NOTIFICATION_GROUP, "Download failed", String.format("Unable to download bytes %s-%s of %s after %s attempts", range.start(), range.end(), path, attempt + 1), NotificationType.ERROR));
+                        transfer.error().set(true);
+                        return CompletableFuture.completedFuture(null);
+                    }
+
+                    var delay = RETRY_DELAY_MS << attempt;
+                    log.warn("Retrying bytes {}-{} of {} in {}ms", range.start(), range.end(), path, delay);
+                    return CompletableFuture.runAsync(() -> {
+                            }, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+                            .thenCompose(x -> downloadPart(client, transfer, range, attempt + 1));
+                });
+    }
+
+    /**
+     * Second progress line with the tuned part size, the speed limit and, when the sink is pipelined, whether the download is waiting
+     * for the network or for the disk.
+     */
+    private String details(Transfer transfer) {
+        var details = new ArrayList<String>();
+        if (transfer.sizer().isTuning()) {
+            details.add("Part size: " + Util.humanReadableByteCountSI(transfer.sizer().getSize()));
+        }
+        var limit = transfer.limiter().getLimit();
+        if (limit > 0) {
+            details.add(String.format("Target: %s/s, actual: %s/s", Util.humanReadableByteCountSI(limit), Util.humanReadableByteCountSI(transfer.progress().getBytesPerSecond())));
+        }
+        if (transfer.sink() instanceof PipelinedSink pipelined) {
+            details.add(String.format("Waiting on network: %ss, on disk: %ss", pipelined.getNetworkWait(TimeUnit.SECONDS), pipelined.getDiskWait(TimeUnit.SECONDS)));
+        }
+        return String.join(", ", details);
+    }
+
+    /**
+     * Query for a part, with the server side hash of the part in the second column when verifying.
+     * HASHBYTES accepts more than 8000 bytes since SQL2016.
+     */
+    private String partQuery(Range range) {
+        if (!verify) {
+            return source.partQuery(range);
+        }
+        return "select p.part, HASHBYTES('SHA2_256', p.part) AS hash from (" + source.partQuery(range) + ") p";
+    }
+
+    /**
+     * Compare the local hash with the hash from the server, the hash is recorded in the manifest when it matches.
+     */
+    private boolean verified(Range range, byte[] local, Object remote) {
+        if (remote instanceof byte[] bytes && MessageDigest.isEqual(local, bytes)) {
+            manifest.hashed(range, HexFormat.of().formatHex(local));
+            return true;
+        }
+        log.warn("Hash mismatch for bytes {}-{} of {}", range.start(), range.end(), path);
+        return false;
+    }
+
+    /**
+     * Write a single part to the sink at the given position and add it to the digest when verifying.
+     */
+    private void write(PartSink sink, long position, Object blob, @Nullable MessageDigest digest) throws IOException, SQLException {
+        if (blob instanceof RemoteBlob) {
+            saveBlob(sink, position, (RemoteBlob) blob, digest);
+        } else if (blob instanceof byte[]) {
+            saveBlob(sink, position, (byte[]) blob, digest);
+        } else if (blob instanceof String) {
+            saveBlob(sink, position, (String) blob, digest); // Haven't actually seen this happen...
+        } else {
+            throw new IllegalArgumentException("Unable to download column of type " + blob.getClass().getName());
+        }
+    }
+
+    /**
+     * Write a part that was compressed on the server as a whole, the compressed size is not related to the range so
+     * the chunks are appended to the part instead of written at a position.
+     */
+    private void writeCompressed(PartSink sink, Range range, Object blob, @Nullable MessageDigest digest) throws IOException, SQLException {
+        if (blob instanceof RemoteBlob remote) {
+            var length = remote.length();
+            long offset = 1;
+            while (offset <= length) {
+                var bytes = remote.getBytes(offset, (int) Math.min(CHUNK_SIZE, length - offset + 1));
+                if (bytes.length == 0) {
+                    break;
+                }
+                writeCompressed(sink, range, bytes, digest);
+                offset += bytes.length;
+            }
+        } else if (blob instanceof byte[] bytes) {
+            writeCompressed(sink, range, bytes, digest);
+        } else {
+            throw new IllegalArgumentException("Unable to download column of type " + blob.getClass().getName());
+        }
+    }
+
+    private void writeCompressed(PartSink sink, Range range, byte[] member, @Nullable MessageDigest digest) throws IOException {
+        for (var offset = 0; offset < member.length; offset += CHUNK_SIZE) {
+            var length = Math.min(CHUNK_SIZE, member.length - offset);
+            if (digest != null) {
+                digest.update(member, offset, length);
+            }
+            sink.reserve(range.start(), length);
+            sink.writeCompressed(range, member, offset, length);
+        }
+    }
+
+    /**
+     * Check if the indicator was cancelled, if so delete the target file.
+     */
+    private void cleanIfCancelled(ProgressIndicator indicator) {
+        if (indicator.isCanceled()) {
+            try {
+                Files.deleteIfExists(target.toPath());
+                manifest.delete();
+                if (getPrevious().exists()) {
+                    Files.move(getPrevious().toPath(), target.toPath());
+                }
+            } catch (IOException e) {
+                Bus.notify(new Notification(Constants.NOTIFICATION_GROUP, "Delete failure", "Unable to delete " + path + " after cancel:\n" + e.getMessage(), NotificationType.WARNING));
+            }
+        }
+    }
+
+    /**
+     * Remove the manifest when everything is downloaded, keep it when something failed so the download can be resumed.
+     */
+    private void finish(ProgressIndicator indicator, boolean failed) {
+        if (indicator.isCanceled()) {
+            return;
+        }
+        if (failed || !manifest.missing().isEmpty()) {
+            Bus.notify(new Notification(Constants.NOTIFICATION_GROUP, "Download incomplete", "The download of " + path + " did not complete, use 'Resume Download' on " + target + " to download the missing parts.", NotificationType.WARNING));
+            return;
+        }
+        try {
+            if (verify) {
+                writeDigest();
+            }
+            manifest.delete();
+            Files.deleteIfExists(getPrevious().toPath());
+        } catch (IOException e) {
+            log.warn("Unable to delete manifest of {}", target, e);
+        }
+    }
+
+    /**
+     * The previous download of the target, exists while a delta download is running
+     */
+    private File getPrevious() {
+        return new File(target.getAbsolutePath() + PREVIOUS_EXTENSION);
+    }
+
+    /**
+     * Write the verified hashes of all parts next to the target. The hashes are of the parts as they were read on
+     * the server, which is the uncompressed file when compressing locally.
+     */
+    private void writeDigest() throws IOException {
+        var lines = new ArrayList<String>();
+        lines.add("# SHA-256 of the parts of " + path + ": start, length, hash");
+        manifest.getHashes().forEach(h -> lines.add(h.range().start() + " " + h.range().length() + " " + h.hash()));
+        Files.write(new File(target.getAbsolutePath() + DIGEST_EXTENSION).toPath(), lines);
+    }
+
+    /**
+     * Write byte array to file, in chunks so the sink never has to handle the whole part at once
+     */
+    private void saveBlob(PartSink sink, long position, byte[] blob, @Nullable MessageDigest digest) throws IOException {
+        for (var offset = 0; offset < blob.length; offset += CHUNK_SIZE) {
+            var length = Math.min(CHUNK_SIZE, blob.length - offset);
+            if (digest != null) {
+                digest.update(blob, offset, length);
+            }
+            sink.reserve(position + offset, length);
+            sink.write(position + offset, blob, offset, length);
+        }
+    }
+
+    /**
+     * Write RemoteBlob to file
+     */
+    private void saveBlob(PartSink sink, long position, RemoteBlob blob, @Nullable MessageDigest digest) throws IOException, SQLException {
+        var length = blob.length();
+        long offset = 1;
+        while (offset <= length) {
+            var bytes = blob.getBytes(offset, (int) Math.min(CHUNK_SIZE, length - offset + 1));
+            if (bytes.length == 0) {
+                break;
+            }
+            saveBlob(sink, position + offset - 1, bytes, digest);
+            offset += bytes.length;
+        }
+    }
+
+    /**
+     * Write string to file
+     */
+    private void saveBlob(PartSink sink, long position, String blob, @Nullable MessageDigest digest) throws IOException {
+        saveBlob(sink, position, blob.getBytes(), digest);
+    }
+
+    /**
+     * State of a single download that is shared by all sessions.
+     */
+    private record Transfer(ProgressIndicator indicator, PartSink sink, RemainingRanges parts, PartSizer sizer, RateLimiter limiter, TransferProgress progress, AtomicBoolean error) {
+    }
+}
@@ -0,0 +1,56 @@
+package dev.niels.sqlbackuprestore.download;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes every part at its own position in the target file.
+ */
+class FileSink implements PartSink {
+    private final DownloadManifest manifest;
+    private final FileChannel channel;
+    private final MemoryBudget budget;
+
+    FileSink(DownloadManifest manifest, boolean resume, MemoryBudget budget) throws IOException {
+        this.manifest = manifest;
+        this.budget = budget;
+        var options = resume ? new StandardOpenOption[]{StandardOpenOption.WRITE} : new StandardOpenOption[]{StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING};
+        channel = FileChannel.open(manifest.getTarget().toPath(), options);
+    }
+
+    @Override
+    public void reserve(long position, long length) throws IOException {
+        budget.acquire(length, () -> false);
+    }
+
+    @Override
+    public void write(long position, byte[] bytes, int offset, int length) throws IOException {
+        try {
+            var buffer = ByteBuffer.wrap(bytes, offset, length);
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        } finally {
+            budget.release(length);
+        }
+    }
+
+    @Override
+    public void completed(Range range) throws IOException {
+        manifest.completed(range);
+    }
+
+    @Override
+    public void discard(Range range) {
+        // The part is overwritten when it is written again
+    }
+
+    @Override
+    public void close() throws IOException {
+        budget.close();
+        channel.close();
+        manifest.flush();
+    }
+}
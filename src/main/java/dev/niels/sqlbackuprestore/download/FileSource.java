@@ -0,0 +1,52 @@
+package dev.niels.sqlbackuprestore.download;
+
+import dev.niels.sqlbackuprestore.query.Client;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Reads every part directly from the file without staging it in tempdb. The size is taken from the file system so
+ * the file doesn't need to be read completely before the download starts. Because nothing is kept in a session,
+ * all parallel sessions can read from the file.
+ */
+@Getter
+@RequiredArgsConstructor
+class FileSource implements DownloadSource {
+    private final String path;
+
+    @Override
+    public boolean isCompressed() {
+        return false;
+    }
+
+    @Override
+    public CompletableFuture<?> prepare(Client c) {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * dm_os_enumerate_filesystem is available since SQL2017, older versions need to read the file to know its length.
+     */
+    @Override
+    public CompletableFuture<Long> size(Client c) {
+        var idx = Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\'));
+        var directory = path.substring(0, idx + 1);
+        var name = path.substring(idx + 1);
+        return c.getSingle("if exists (select 1 from sys.all_objects where name = 'dm_os_enumerate_filesystem' and type = 'IF' and is_ms_shipped = 1)\n" +
+                "    select size_in_bytes AS fs from sys.dm_os_enumerate_filesystem(N'" + directory + "', N'" + name + "') where is_directory = 0\n" +
+                "else\n" +
+                "    select DATALENGTH(BulkColumn) AS fs from OPENROWSET(BULK N'" + path + "', SINGLE_BLOB) x", "fs", Long.class);
+    }
+
+    @Override
+    public String partQuery(Range range) {
+        return String.format("select substring(BulkColumn, %s, %s) AS part from OPENROWSET(BULK N'%s', SINGLE_BLOB) x", range.start() + 1, range.length(), path);
+    }
+
+    @Override
+    public CompletableFuture<?> cleanup(Client c) {
+        return CompletableFuture.completedFuture(null);
+    }
+}
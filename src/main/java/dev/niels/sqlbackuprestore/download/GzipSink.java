@@ -0,0 +1,231 @@
+package dev.niels.sqlbackuprestore.download;
+
+import com.intellij.util.concurrency.AppExecutorUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses the downloaded bytes locally. The bytes are split into blocks that are compressed in parallel on all
+ * cores and appended to the target in order, every block as its own gzip member. GZIPInputStream reads concatenated
+ * members as a single stream. Parts that were already compressed on the server are appended the same way.
+ * Blocks are only appended once their part is completed (and verified) and only the blocks that are appended are
+ * recorded in the manifest, so the completed part is always the start of the file and a resumed download continues
+ * at the end of the target. The blocks that wait count against the {@link MemoryBudget}, only the part that is next in
+ * line can be received when the budget is used up.
+ */
+class GzipSink implements PartSink {
+    private static final int BLOCK_SIZE = 1024 * 1024;
+    private final DownloadManifest manifest;
+    private final FileChannel channel;
+    private final ExecutorService executor;
+    private final MemoryBudget budget;
+    /**
+     * Blocks that are being compressed or wait for the blocks before them, by source position
+     */
+    private final TreeMap<Long, Block> pending = new TreeMap<>();
+    private int running;
+    /**
+     * Position in the source up to which everything is appended
+     */
+    private long position;
+    /**
+     * Source position up to which the blocks are received without gaps, writes up to this position are next in line
+     */
+    private volatile long next;
+    /**
+     * Number of compressed bytes in the target
+     */
+    private long written;
+    private volatile IOException failure;
+
+    GzipSink(DownloadManifest manifest, boolean resume, MemoryBudget budget) throws IOException {
+        this.manifest = manifest;
+        this.budget = budget;
+        executor = AppExecutorUtil.createBoundedApplicationPoolExecutor("SQL Backup compression", Runtime.getRuntime().availableProcessors());
+        if (resume) {
+            channel = FileChannel.open(manifest.getTarget().toPath(), StandardOpenOption.WRITE);
+            written = manifest.getWritten();
+            position = manifest.missing().stream().findFirst().map(Range::start).orElse(manifest.getSize());
+            channel.truncate(written);
+        } else {
+            channel = FileChannel.open(manifest.getTarget().toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+        next = position;
+    }
+
+    @Override
+    public void reserve(long position, long length) throws IOException {
+        // The later chunks of a server compressed part are written at the start of the part, which is before next
+        budget.acquire(length, () -> failure != null || position <= next);
+    }
+
+    @Override
+    public void write(long start, byte[] bytes, int offset, int length) throws IOException {
+        // The blocks are compressed straight from the array, it isn't changed after it was written
+        for (var index = 0; index < length; index += BLOCK_SIZE) {
+            var blockOffset = offset + index;
+            var blockLength = Math.min(length - index, BLOCK_SIZE);
+            var range = new Range(start + index, blockLength);
+            synchronized (this) {
+                if (failure != null) {
+                    throw failure;
+                }
+                running++;
+                var compressed = CompletableFuture.supplyAsync(() -> compress(bytes, blockOffset, blockLength), executor);
+                put(new Block(range, blockLength, List.of(compressed), false));
+                compressed.whenComplete((x, t) -> blockDone());
+            }
+        }
+    }
+
+    @Override
+    public synchronized void writeCompressed(Range range, byte[] bytes, int offset, int length) throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        // The chunks of a member are kept together, they can only be appended as a whole
+        var chunks = new ArrayList<CompletableFuture<ByteBuffer>>();
+        var block = pending.get(range.start());
+        if (block != null && block.range().equals(range)) {
+            chunks.addAll(block.chunks());
+        }
+        chunks.add(CompletableFuture.completedFuture(ByteBuffer.wrap(bytes, offset, length)));
+        put(new Block(range, (block == null ? 0 : block.bytes()) + length, chunks, false));
+    }
+
+    @Override
+    public synchronized void completed(Range range) throws IOException {
+        var blocks = pending.subMap(range.start(), range.end());
+        blocks.replaceAll((k, b) -> new Block(b.range(), b.bytes(), b.chunks(), true));
+        append();
+    }
+
+    @Override
+    public synchronized void discard(Range range) {
+        remove(pending.subMap(range.start(), range.end()));
+    }
+
+    /**
+     * Waits for the blocks that are still being compressed. Blocks that can't be appended because a block before them
+     * is missing (the download failed or was cancelled) are dropped.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            synchronized (this) {
+                while (running > 0) {
+                    wait();
+                }
+                remove(pending);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } finally {
+            budget.close();
+            executor.shutdownNow();
+            channel.close();
+            manifest.flush();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private synchronized void blockDone() {
+        running--;
+        try {
+            append();
+        } catch (IOException e) {
+            failure = e;
+            budget.close();
+        }
+        notifyAll();
+    }
+
+    /**
+     * Append the compressed blocks that are next in line.
+     */
+    private void append() throws IOException {
+        while (!pending.isEmpty() && pending.firstKey() == position && pending.firstEntry().getValue().isReady()) {
+            var block = pending.pollFirstEntry().getValue();
+            budget.release(block.bytes());
+            for (var chunk : block.chunks()) {
+                var buffer = join(chunk);
+                while (buffer.hasRemaining()) {
+                    written += channel.write(buffer, written);
+                }
+            }
+            position = block.range().end();
+            manifest.completed(block.range(), written);
+        }
+        advance();
+    }
+
+    private void put(Block block) {
+        pending.put(block.range().start(), block);
+        advance();
+    }
+
+    private void remove(Map<Long, Block> blocks) {
+        budget.release(blocks.values().stream().mapToLong(Block::bytes).sum());
+        blocks.clear();
+        advance();
+    }
+
+    /**
+     * Move the next position past the blocks that follow the appended part without gaps.
+     */
+    private void advance() {
+        var end = position;
+        for (var block : pending.tailMap(position).values()) {
+            if (block.range().start() != end) {
+                break;
+            }
+            end = block.range().end();
+        }
+        next = end;
+        budget.changed();
+    }
+
+    private static ByteBuffer join(CompletableFuture<ByteBuffer> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        }
+    }
+
+    private static ByteBuffer compress(byte[] bytes, int offset, int length) {
+        var result = new ByteArrayOutputStream(length / 2);
+        try (var gzip = new GZIPOutputStream(result)) {
+            gzip.write(bytes, offset, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return ByteBuffer.wrap(result.toByteArray());
+    }
+
+    /**
+     * @param bytes  memory the block holds while it waits
+     * @param chunks the compressed block, or the chunks of a member that was compressed on the server
+     */
+    private record Block(Range range, long bytes, List<CompletableFuture<ByteBuffer>> chunks, boolean confirmed) {
+        boolean isReady() {
+            return confirmed && chunks.stream().allMatch(CompletableFuture::isDone);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package dev.niels.sqlbackuprestore.download;
+
+import dev.niels.sqlbackuprestore.query.Client;
+import one.util.streamex.StreamEx;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Finds all files (stripes) of the media set that a backup file belongs to. The backup history in msdb knows the
+ * files of backups that were made on the server itself, otherwise the label of every candidate file is compared.
+ */
+public final class MediaSet {
+    private MediaSet() {
+    }
+
+    /**
+     * @param path       one of the files of the media set
+     * @param candidates files that might be part of the same media set, i.e. the files in the same directory
+     * @return the files of the media set ordered by their sequence number, an empty list when the file is not a backup
+     */
+    public static CompletableFuture<List<String>> find(Client c, String path, List<String> candidates) {
+        return label(c, path).thenCompose(label -> {
+            if (label == null) {
+                return CompletableFuture.completedFuture(List.of());
+            }
+            if (label.familyCount() <= 1) {
+                return CompletableFuture.completedFuture(List.of(path));
+            }
+            return fromHistory(c, label).thenCompose(found -> found.size() == label.familyCount() ? CompletableFuture.completedFuture(found) : scan(c, label, path, candidates));
+        });
+    }
+
+    private static CompletableFuture<List<String>> fromHistory(Client c, Label label) {
+        return c.getResult("select f.physical_device_name AS path from msdb.dbo.backupmediafamily f\n" +
+                        "    join msdb.dbo.backupmediaset s on s.media_set_id = f.media_set_id\n" +
+                        "where s.media_uuid = '" + label.mediaSetId() + "' and f.mirror = 0 and f.device_type = 2\n" +
+                        "order by f.family_sequence_number")
+                .thenApply(rows -> StreamEx.of(rows).map(r -> Objects.toString(r.get("path"), null)).nonNull().distinct().toList());
+    }
+
+    /**
+     * Read the label of every candidate, one after the other on the same connection.
+     */
+    private static CompletableFuture<List<String>> scan(Client c, Label label, String path, List<String> candidates) {
+        var found = new ArrayList<Label>();
+        found.add(label);
+        CompletableFuture<?> chain = CompletableFuture.completedFuture(null);
+        for (var candidate : candidates) {
+            if (StringUtils.equalsIgnoreCase(candidate, path)) {
+                continue;
+            }
+            chain = chain.thenCompose(x -> label(c, candidate)).thenAccept(l -> {
+                if (l != null && l.mediaSetId().equals(label.mediaSetId())) {
+                    found.add(l);
+                }
+            });
+        }
+        return chain.thenApply(x -> StreamEx.of(found).sortedByInt(Label::familySequenceNumber).map(Label::path).toList());
+    }
+
+    /**
+     * RESTORE LABELONLY fails for files that are not a backup, which results in an empty result.
+     */
+    private static CompletableFuture<Label> label(Client c, String path) {
+        return c.getResult("RESTORE LABELONLY FROM DISK = N'" + path + "' WITH NOUNLOAD;").thenApply(rows -> {
+            if (rows.isEmpty() || rows.get(0).get("MediaSetId") == null) {
+                return null;
+            }
+            var row = rows.get(0);
+            return new Label(path, Objects.toString(row.get("MediaSetId")), toInt(row.get("FamilyCount")), toInt(row.get("FamilySequenceNumber")));
+        });
+    }
+
+    private static int toInt(Object o) {
+        return o instanceof Number nr ? nr.intValue() : 1;
+    }
+
+    private record Label(String path, String mediaSetId, int familyCount, int familySequenceNumber) {
+    }
+}
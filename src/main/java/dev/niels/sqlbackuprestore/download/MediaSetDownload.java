@@ -0,0 +1,80 @@
+package dev.niels.sqlbackuprestore.download;
+
+import com.intellij.notification.Notification;
+import com.intellij.notification.NotificationType;
+import com.intellij.notification.Notifications.Bus;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task.Backgroundable;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import dev.niels.sqlbackuprestore.Constants;
+import dev.niels.sqlbackuprestore.query.Client;
+import dev.niels.sqlbackuprestore.query.QueryHelper;
+import one.util.streamex.StreamEx;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Downloads all stripes of a media set at the same time, every stripe on its own session and into its own file in
+ * the target directory. The progress is shown for the media set as a whole.
+ */
+public class MediaSetDownload extends Backgroundable {
+    private final Client connection;
+    private final List<String> paths;
+    private final File directory;
+
+    /**
+     * @param connection the connection used to determine the sizes, will be closed when the download finishes
+     * @param paths      the files of the media set on the server
+     * @param directory  the local directory the stripes are written to
+     */
+    public MediaSetDownload(@Nullable Project project, Client connection, List<String> paths, File directory) {
+        super(project, "Downloading media set of " + paths.size() + " files");
+        this.connection = connection;
+        this.paths = paths;
+        this.directory = directory;
+    }
+
+    @Override
+    public void run(@NotNull ProgressIndicator indicator) {
+        try {
+            indicator.setIndeterminate(false);
+            indicator.setFraction(0.0);
+
+            var sizes = StreamEx.of(paths).map(p -> DownloadSource.fileSize(connection, p)).toList();
+            CompletableFuture.allOf(sizes.toArray(CompletableFuture[]::new)).get();
+            var total = StreamEx.of(sizes).map(CompletableFuture::join).nonNull().mapToLong(Long::longValue).sum();
+            var progress = new TransferProgress(getTitle(), total);
+
+            var stripes = StreamEx.of(paths).map(path -> downloadStripe(indicator, progress, path)).toList();
+            CompletableFuture.allOf(stripes.toArray(CompletableFuture[]::new)).get();
+        } catch (Exception e) {
+            Bus.notify(new Notification(Constants.NOTIFICATION_GROUP, "Download failed", "Unable to download the media set to " + directory + ":\n" + e.getMessage(), NotificationType.ERROR));
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Every stripe is a normal download with its own manifest, so a failed stripe can be resumed on its own.
+     */
+    private CompletableFuture<?> downloadStripe(ProgressIndicator indicator, TransferProgress progress, String path) {
+        var client = QueryHelper.client(connection);
+        var name = path.substring(Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\')) + 1);
+        client.setTitle("Download " + name);
+
+        var source = DownloadSource.of(path, Compression.NONE);
+        var task = new DownloadTask(getProject(), client, source, new DownloadManifest(new File(directory, name), client.getDataSource().getUniqueId(), path, Compression.NONE)).withProgress(progress);
+        return source.prepare(client)
+                .thenRunAsync(() -> task.run(indicator), AppExecutorUtil.getAppExecutorService())
+                .whenComplete((x, t) -> {
+                    if (t != null) {
+                        client.close();
+                    }
+                });
+    }
+}
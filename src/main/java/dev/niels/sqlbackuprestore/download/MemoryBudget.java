@@ -0,0 +1,57 @@
+package dev.niels.sqlbackuprestore.download;
+
+import java.io.InterruptedIOException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Memory for received bytes that are not in the target yet: writes that wait in the queue of the {@link PipelinedSink}
+ * and blocks that the {@link GzipSink} keeps until the parts before them are completed. The sessions wait when the
+ * budget is used up, except for writes that are next in line for the target. Those are what frees the memory of the
+ * blocks after them, so the budget is exceeded by at most the part that is next in line.
+ */
+class MemoryBudget {
+    private final long limit;
+    private long used;
+    private boolean closed;
+
+    MemoryBudget(int limitMb) {
+        limit = Math.max(1, limitMb) * 1024L * 1024;
+    }
+
+    /**
+     * Wait until the bytes fit, a single write that is bigger than the limit may use all memory.
+     *
+     * @param next whether the write is next in line, checked again whenever memory is released
+     */
+    synchronized void acquire(long bytes, BooleanSupplier next) throws InterruptedIOException {
+        try {
+            while (!closed && used > 0 && used + bytes > limit && !next.getAsBoolean()) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        used += bytes;
+    }
+
+    synchronized void release(long bytes) {
+        used -= bytes;
+        notifyAll();
+    }
+
+    /**
+     * The write that is next in line changed, the waiting writes check whether they are next.
+     */
+    synchronized void changed() {
+        notifyAll();
+    }
+
+    /**
+     * Stop waiting, after the sink is closed or failed nothing frees the memory anymore.
+     */
+    synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+}
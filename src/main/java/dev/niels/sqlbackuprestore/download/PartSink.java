@@ -0,0 +1,60 @@
+package dev.niels.sqlbackuprestore.download;
+
+import dev.niels.sqlbackuprestore.AppSettingsState;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Stores the downloaded bytes in the target file and records what is stored in the manifest.
+ */
+interface PartSink extends Closeable {
+    static PartSink open(DownloadManifest manifest, boolean resume) throws IOException {
+        var appended = manifest.getCompression() == Compression.CLIENT || manifest.getCompression() == Compression.SERVER_PARTS;
+        var settings = AppSettingsState.getInstance();
+        var budget = new MemoryBudget(settings.getDownloadMemoryLimit());
+        var sink = appended ? new GzipSink(manifest, resume, budget) : new FileSink(manifest, resume, budget);
+        if (settings.getDownloadReadAhead() > 0) {
+            return new PipelinedSink(sink, settings.getDownloadReadAhead(), budget);
+        }
+        return sink;
+    }
+
+    /**
+     * Wait until there is memory for length bytes that are written at the (source) position, must be called before
+     * every write. The sink releases the memory when it no longer holds the bytes.
+     */
+    void reserve(long position, long length) throws IOException;
+
+    /**
+     * Store bytes of the source file, starting at the given (zero based) position of the source.
+     */
+    default void write(long position, byte[] bytes) throws IOException {
+        write(position, bytes, 0, bytes.length);
+    }
+
+    /**
+     * Store length bytes from offset of the array, the array is not changed afterwards so it can be kept until it is
+     * written.
+     */
+    void write(long position, byte[] bytes, int offset, int length) throws IOException;
+
+    /**
+     * Store a chunk of a part that is already compressed as a gzip member, the chunks of a part are passed in order.
+     * Only supported by sinks that append the parts in order. The array is not changed afterwards.
+     */
+    default void writeCompressed(Range range, byte[] bytes, int offset, int length) throws IOException {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " doesn't support compressed parts");
+    }
+
+    /**
+     * Called when all bytes of the range were passed to {@link #write(long, byte[])}.
+     */
+    void completed(Range range) throws IOException;
+
+    /**
+     * Called when the bytes of the range that were passed to {@link #write(long, byte[])} turned out to be wrong, the
+     * range will be written again.
+     */
+    void discard(Range range) throws IOException;
+}
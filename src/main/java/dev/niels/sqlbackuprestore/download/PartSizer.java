@@ -0,0 +1,74 @@
+package dev.niels.sqlbackuprestore.download;
+
+import dev.niels.sqlbackuprestore.AppSettingsState;
+import dev.niels.sqlbackuprestore.query.Client;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Determines the size of the parts that are requested from the server. By default the file is split into 100 parts
+ * of at least 1MB and at most {@link #MAX_SIZE}. When tuning is enabled the size is adjusted after every part so that a single part takes about
+ * {@link #TARGET_SECONDS} to arrive, based on the measured throughput. The tuned size is remembered per data source
+ * and used as the starting point for the next download.
+ */
+class PartSizer {
+    static final long MIN_SIZE = 256 * 1024L;
+    static final long MAX_SIZE = 64 * 1024 * 1024L;
+    private static final long DEFAULT_SIZE = 1_000_000L;
+    private static final double TARGET_SECONDS = 2;
+    /**
+     * The data source the size is remembered for, null when the size is not tuned.
+     */
+    private final String key;
+    private long size;
+
+    private PartSizer(String key, long size) {
+        this.key = key;
+        this.size = size;
+    }
+
+    static PartSizer create(Client c, long fileSize) {
+        var settings = AppSettingsState.getInstance();
+        if (!settings.isAutoTunePartSize()) {
+            // Split into 100 parts unless the parts are smaller than 1MB, or bigger than the maximum. Parts that are
+            // returned as byte[] are held in memory completely.
+            return new PartSizer(null, clamp((long) Math.ceil(fileSize / 100d), DEFAULT_SIZE, MAX_SIZE));
+        }
+        var key = c.getDataSource().getUniqueId();
+        return new PartSizer(key, clamp(settings.getPartSizes().getOrDefault(key, DEFAULT_SIZE), MIN_SIZE, MAX_SIZE));
+    }
+
+    synchronized long getSize() {
+        return size;
+    }
+
+    boolean isTuning() {
+        return key != null;
+    }
+
+    /**
+     * Adjust the size toward the size that would take the target time with the measured throughput. The size never
+     * changes by more than a factor 2 at a time so a single slow or fast part doesn't throw it off.
+     */
+    synchronized void measured(long bytes, long nanos) {
+        if (!isTuning() || nanos <= 0) {
+            return;
+        }
+        var bytesPerSecond = bytes / (nanos / (double) TimeUnit.SECONDS.toNanos(1));
+        var ideal = (long) (bytesPerSecond * TARGET_SECONDS);
+        size = clamp(clamp(ideal, size / 2, size * 2), MIN_SIZE, MAX_SIZE);
+    }
+
+    /**
+     * Store the current size as the starting point for the next download from the same data source.
+     */
+    synchronized void remember() {
+        if (isTuning()) {
+            AppSettingsState.getInstance().getPartSizes().put(key, size);
+        }
+    }
+
+    private static long clamp(long value, long min, long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
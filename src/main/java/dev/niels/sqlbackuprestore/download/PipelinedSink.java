@@ -0,0 +1,160 @@
+package dev.niels.sqlbackuprestore.download;
+
+import com.intellij.util.concurrency.AppExecutorUtil;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decouples receiving parts from writing them. Received bytes are put in a bounded queue and written to the delegate
+ * by a separate thread, so the sessions can fetch the next part while the previous one is being written. The queue
+ * holds at most readAhead writes and the {@link MemoryBudget} of the delegate, when it's full the sessions wait for
+ * the disk.
+ */
+class PipelinedSink implements PartSink {
+    private static final Operation STOP = new Operation(s -> {
+    });
+    private final PartSink delegate;
+    private final BlockingQueue<Operation> queue;
+    private final MemoryBudget budget;
+    private final CompletableFuture<Void> writer;
+    private final AtomicLong networkWait = new AtomicLong();
+    private final AtomicLong diskWait = new AtomicLong();
+    private volatile IOException failure;
+
+    PipelinedSink(PartSink delegate, int readAhead, MemoryBudget budget) {
+        this.delegate = delegate;
+        this.budget = budget;
+        queue = new ArrayBlockingQueue<>(readAhead + 1);
+        writer = CompletableFuture.runAsync(this::drain, AppExecutorUtil.getAppExecutorService());
+    }
+
+    /**
+     * The memory is reserved by the session that received the bytes, the writer thread never waits for memory because
+     * it is the one that frees it.
+     */
+    @Override
+    public void reserve(long position, long length) throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        var started = System.nanoTime();
+        try {
+            delegate.reserve(position, length);
+        } finally {
+            diskWait.addAndGet(System.nanoTime() - started);
+        }
+    }
+
+    @Override
+    public void write(long position, byte[] bytes, int offset, int length) throws IOException {
+        enqueue(new Operation(s -> s.write(position, bytes, offset, length)));
+    }
+
+    @Override
+    public void writeCompressed(Range range, byte[] bytes, int offset, int length) throws IOException {
+        enqueue(new Operation(s -> s.writeCompressed(range, bytes, offset, length)));
+    }
+
+    @Override
+    public void completed(Range range) throws IOException {
+        enqueue(new Operation(s -> s.completed(range)));
+    }
+
+    @Override
+    public void discard(Range range) throws IOException {
+        enqueue(new Operation(s -> s.discard(range)));
+    }
+
+    /**
+     * Time the writer waited for parts to arrive
+     */
+    long getNetworkWait(TimeUnit unit) {
+        return unit.convert(networkWait.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Time the sessions waited for the writer to make room
+     */
+    long getDiskWait(TimeUnit unit) {
+        return unit.convert(diskWait.get(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            queue.put(STOP);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } finally {
+            delegate.close();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void enqueue(Operation operation) throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+
+        var started = System.nanoTime();
+        try {
+            queue.put(operation);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } finally {
+            diskWait.addAndGet(System.nanoTime() - started);
+        }
+    }
+
+    /**
+     * Writes everything from the queue until it's stopped. After a failure the queue is still drained and the budget
+     * is closed so that nobody keeps waiting for room.
+     */
+    private void drain() {
+        try {
+            while (true) {
+                var started = System.nanoTime();
+                var operation = queue.take();
+                networkWait.addAndGet(System.nanoTime() - started);
+                if (operation == STOP) {
+                    return;
+                }
+
+                try {
+                    if (failure == null) {
+                        operation.action().apply(delegate);
+                    }
+                } catch (IOException e) {
+                    fail(e);
+                } catch (RuntimeException e) {
+                    fail(new IOException(e));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void fail(IOException e) {
+        failure = e;
+        budget.close();
+    }
+
+    private interface SinkAction {
+        void apply(PartSink sink) throws IOException;
+    }
+
+    private record Operation(SinkAction action) {
+    }
+}
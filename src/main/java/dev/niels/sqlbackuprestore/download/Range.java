@@ -0,0 +1,24 @@
+package dev.niels.sqlbackuprestore.download;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A part of a file, start is zero based.
+ */
+record Range(long start, long length) {
+    public long end() {
+        return start + length;
+    }
+
+    /**
+     * Split this range into parts of at most partSize bytes.
+     */
+    List<Range> split(long partSize) {
+        var result = new ArrayList<Range>();
+        for (var position = start; position < end(); position += partSize) {
+            result.add(new Range(position, Math.min(partSize, end() - position)));
+        }
+        return result;
+    }
+}
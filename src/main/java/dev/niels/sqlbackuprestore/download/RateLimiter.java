@@ -0,0 +1,47 @@
+package dev.niels.sqlbackuprestore.download;
+
+import dev.niels.sqlbackuprestore.AppSettingsState;
+import dev.niels.sqlbackuprestore.query.Client;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the download speed of all sessions of a download to the limit that is set for the data source. Parts are
+ * spaced so that on average no more than the limit is transferred. The limit is read before every part, changing it
+ * while a download is running takes effect with the next part.
+ */
+class RateLimiter {
+    private final String key;
+    /**
+     * Moment (System.nanoTime) at which the next part may be requested
+     */
+    private long next;
+
+    RateLimiter(Client c) {
+        this.key = c.getDataSource().getUniqueId();
+    }
+
+    /**
+     * The limit in bytes per second, 0 for unlimited
+     */
+    long getLimit() {
+        return AppSettingsState.getInstance().getDownloadRateLimits().getOrDefault(key, 0L);
+    }
+
+    /**
+     * Reserve the bytes of the next part.
+     *
+     * @return the number of nanoseconds to wait before requesting the part
+     */
+    synchronized long reserve(long bytes) {
+        var limit = getLimit();
+        var now = System.nanoTime();
+        if (limit <= 0) {
+            next = now;
+            return 0;
+        }
+        var start = Math.max(now, next);
+        next = start + (long) (bytes * (double) TimeUnit.SECONDS.toNanos(1) / limit);
+        return start - now;
+    }
+}
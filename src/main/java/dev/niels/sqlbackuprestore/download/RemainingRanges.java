@@ -0,0 +1,36 @@
+package dev.niels.sqlbackuprestore.download;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * The ranges of a file that are not yet taken by a session. Parts are cut from the front with the size that is
+ * requested at that moment, so the part size can change while downloading.
+ */
+class RemainingRanges {
+    private final Deque<Range> remaining;
+
+    RemainingRanges(List<Range> ranges) {
+        remaining = new ArrayDeque<>(ranges);
+    }
+
+    /**
+     * @return the next part of at most size bytes or null if nothing remains
+     */
+    synchronized Range take(long size) {
+        var first = remaining.poll();
+        if (first == null) {
+            return null;
+        }
+        if (first.length() > size) {
+            remaining.push(new Range(first.start() + size, first.length() - size));
+            return new Range(first.start(), size);
+        }
+        return first;
+    }
+
+    synchronized long bytes() {
+        return remaining.stream().mapToLong(Range::length).sum();
+    }
+}
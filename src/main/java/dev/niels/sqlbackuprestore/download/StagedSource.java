@@ -0,0 +1,46 @@
+package dev.niels.sqlbackuprestore.download;
+
+import dev.niels.sqlbackuprestore.AppSettingsState;
+import dev.niels.sqlbackuprestore.query.Client;
+import lombok.Getter;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Reads the complete file into a temporary table first. Parallel sessions can only see global temporary tables so
+ * a uniquely named global table is used when downloading with multiple sessions.
+ */
+@Getter
+class StagedSource implements DownloadSource {
+    private final String path;
+    private final boolean compressed;
+    private final String table;
+
+    StagedSource(String path, boolean compressed) {
+        this.path = path;
+        this.compressed = compressed;
+        this.table = AppSettingsState.getInstance().getDownloadParallelism() > 1 ? "##filedownload_" + Long.toHexString(System.nanoTime()) : "#filedownload";
+    }
+
+    @Override
+    public CompletableFuture<?> prepare(Client c) {
+        var col = compressed ? "COMPRESS(BulkColumn)" : "BulkColumn";
+        return c.execute("SELECT 1 as id, CAST(0 as bigint) AS fs, " + col + " AS f into " + table + " FROM OPENROWSET(BULK N'" + path + "', SINGLE_BLOB) x;")
+                .thenCompose(x -> c.execute("update " + table + " set fs = LEN(f) where id = 1;"));
+    }
+
+    @Override
+    public CompletableFuture<Long> size(Client c) {
+        return c.getSingle("SELECT fs FROM " + table, "fs", Long.class);
+    }
+
+    @Override
+    public String partQuery(Range range) {
+        return String.format("select substring(f, %s, %s) AS part from %s", range.start() + 1, range.length(), table);
+    }
+
+    @Override
+    public CompletableFuture<?> cleanup(Client c) {
+        return c.execute("IF OBJECT_ID('tempdb.." + table + "') IS NOT NULL DROP TABLE " + table + ";");
+    }
+}
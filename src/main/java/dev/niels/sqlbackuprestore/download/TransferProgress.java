@@ -0,0 +1,52 @@
+package dev.niels.sqlbackuprestore.download;
+
+import com.intellij.openapi.progress.ProgressIndicator;
+import dev.niels.sqlbackuprestore.action.Util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of the number of transferred bytes over all sessions to show the aggregate throughput.
+ */
+class TransferProgress {
+    private final String title;
+    private final long size;
+    private final AtomicLong done = new AtomicLong();
+    /**
+     * Bytes that were already downloaded before, they don't count for the throughput
+     */
+    private final AtomicLong skipped = new AtomicLong();
+    private final long started = System.nanoTime();
+
+    TransferProgress(String title, long size) {
+        this.title = title;
+        this.size = size;
+    }
+
+    /**
+     * Add the bytes that were downloaded by an earlier attempt.
+     */
+    void skip(ProgressIndicator indicator, long bytes) {
+        skipped.addAndGet(bytes);
+        add(indicator, bytes);
+    }
+
+    void add(ProgressIndicator indicator, long bytes) {
+        var current = done.addAndGet(bytes);
+        indicator.setFraction(size == 0 ? 1 : (double) current / size);
+        indicator.setText(String.format("%s: %s/%s (%s/s)", title, Util.humanReadableByteCountSI(current), Util.humanReadableByteCountSI(size), Util.humanReadableByteCountSI(getBytesPerSecond())));
+    }
+
+    long getTransferred() {
+        return done.get() - skipped.get();
+    }
+
+    /**
+     * Throughput of the bytes transferred since the start
+     */
+    long getBytesPerSecond() {
+        var elapsed = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        return getTransferred() * 1000 / elapsed;
+    }
+}
@@ -21,10 +21,16 @@ public class Client implements AutoCloseable {
     private final DatabaseSessionClient dbClient;
     private final Auditor auditor;
     @Getter
+    private final Project project;
+    @Getter
+    private final LocalDataSource dataSource;
+    @Getter
     private final String dbName;
     private int useCount = 1;
 
     public Client(Project project, LocalDataSource dataSource) {
+        this.project = project;
+        this.dataSource = dataSource;
         dbClient = DatabaseSessionManager.getFacade(project, dataSource, null, null, null, Constants.databaseDepartment).client();
         dbName = dataSource.getName();
         auditor = new Auditor();
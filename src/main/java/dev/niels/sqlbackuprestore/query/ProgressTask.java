@@ -10,8 +10,11 @@ import org.jetbrains.annotations.Nls.Capitalization;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.LongSupplier;
 import java.util.regex.Pattern;
 
 /**
@@ -22,12 +25,36 @@ public class ProgressTask extends Backgroundable {
     private static final Pattern progressPattern = Pattern.compile("\\[3211] (\\d+)");
     private final Consumer<BiConsumer<MessageType, String>> run;
     private ProgressIndicator indicator;
+    private @Nullable Client polled;
+    private @Nullable CompletableFuture<Integer> sessionId;
+    private LongSupplier size = () -> 0;
 
     public ProgressTask(@Nullable Project project, @Nls(capitalization = Capitalization.Sentence) @NotNull String title, boolean canBeCancelled, Consumer<BiConsumer<MessageType, String>> run) {
         super(project, title, canBeCancelled);
         this.run = run;
     }
 
+    /**
+     * Poll the server for the progress of the request that runs on the session of the connection, see RequestPoller.
+     *
+     * @param sessionId the session of the connection, see {@link #sessionId(Client)}. Nothing is polled when it can't
+     *                  be determined.
+     * @param size      number of bytes of the running request, for the throughput
+     */
+    public ProgressTask poll(Client c, CompletableFuture<Integer> sessionId, LongSupplier size) {
+        this.polled = c;
+        this.sessionId = sessionId;
+        this.size = size;
+        return this;
+    }
+
+    /**
+     * The id of the session of the connection, must be requested before the backup or restore is started on it.
+     */
+    public static CompletableFuture<Integer> sessionId(Client c) {
+        return RequestPoller.sessionId(c);
+    }
+
     @Override
     public void run(ProgressIndicator indicator) {
         this.indicator = indicator;
@@ -35,15 +62,32 @@ public class ProgressTask extends Backgroundable {
         indicator.setIndeterminate(false);
         indicator.setFraction(0.0);
 
-        run.accept(this::consumeWarning);
+        var session = sessionId == null ? null : RequestPoller.await(sessionId);
+        if (polled == null || session == null) {
+            run.accept(this::consumeWarning);
+            return;
+        }
+        try (var poller = new RequestPoller(polled, session, size, indicator)) {
+            run.accept(this::consumeWarning);
+        }
     }
 
-    private void consumeWarning(MessageType type, String warning) {
+    /**
+     * The percentage of a "[3211] 10 percent processed." message, empty for other messages.
+     */
+    public static OptionalInt percent(MessageType type, String warning) {
         if (type == MessageType.WARN && warning.contains("3211")) {
             var matcher = progressPattern.matcher(warning);
             if (matcher.find()) {
-                indicator.setFraction(Integer.parseInt(matcher.group(1)) / 100d);
+                return OptionalInt.of(Integer.parseInt(matcher.group(1)));
             }
+        }
+        return OptionalInt.empty();
+    }
+
+    private void consumeWarning(MessageType type, String warning) {
+        if (type == MessageType.WARN && warning.contains("3211")) {
+            percent(type, warning).ifPresent(p -> indicator.setFraction(p / 100d));
         } else {
             log.warn("Warning: {}:{}", type, warning);
         }
@@ -1,5 +1,6 @@
 package dev.niels.sqlbackuprestore.query;
 
+import com.intellij.database.dataSource.LocalDataSource;
 import com.intellij.database.dialects.mssql.model.MsDatabase;
 import com.intellij.database.psi.DbDataSource;
 import com.intellij.database.psi.DbElement;
@@ -7,7 +8,9 @@ import com.intellij.database.psi.DbNamespaceImpl;
 import com.intellij.database.util.DbImplUtil;
 import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.actionSystem.CommonDataKeys;
+import com.intellij.openapi.project.Project;
 import com.intellij.psi.PsiElement;
+import one.util.streamex.StreamEx;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -31,7 +34,10 @@ public abstract class QueryHelper {
     }
 
     private static Optional<DbNamespaceImpl> getNamespace(@NotNull AnActionEvent e) {
-        var element = getPsiElement(e);
+        return getNamespace(getPsiElement(e));
+    }
+
+    private static Optional<DbNamespaceImpl> getNamespace(@Nullable PsiElement element) {
         while (element != null && (!(element instanceof DbNamespaceImpl) || !(((DbElement) element).getDelegate() instanceof MsDatabase))) {
             element = element.getParent();
         }
@@ -61,9 +67,40 @@ public abstract class QueryHelper {
         return getNamespace(e).map(d -> (MsDatabase) d.getDelegate());
     }
 
+    /**
+     * All selected databases, when multiple elements are selected in the database tree.
+     */
+    public static List<MsDatabase> getDatabases(@NotNull AnActionEvent e) {
+        var elements = e.getData(PSI_ELEMENT_ARRAY);
+        if (elements == null || elements.length <= 1) {
+            return getDatabase(e).stream().toList();
+        }
+        return StreamEx.of(elements)
+                .map(QueryHelper::getNamespace)
+                .flatMap(Optional::stream)
+                .map(d -> (MsDatabase) d.getDelegate())
+                .distinct()
+                .toList();
+    }
+
+    public static Optional<LocalDataSource> getDataSource(@NotNull AnActionEvent e) {
+        return getSource(e).map(DbImplUtil::getMaybeLocalDataSource);
+    }
+
     public static Client client(@NotNull AnActionEvent e) {
+        return client(e.getProject(), getDataSource(e).orElseThrow());
+    }
+
+    /**
+     * Creates a new client (with its own session) for the same data source as the given client.
+     */
+    public static Client client(@NotNull Client sibling) {
+        return client(sibling.getProject(), sibling.getDataSource());
+    }
+
+    public static Client client(Project project, LocalDataSource dataSource) {
         cleanOldClients();
-        var client = new Client(e.getProject(), getSource(e).map(DbImplUtil::getMaybeLocalDataSource).orElseThrow());
+        var client = new Client(project, dataSource);
         clients.add(client);
         return client;
     }
@@ -1,8 +1,10 @@
 package dev.niels.sqlbackuprestore.query;
 
+import dev.niels.sqlbackuprestore.backup.BackupDevice;
 import dev.niels.sqlbackuprestore.ui.filedialog.RemoteFile;
 import lombok.Data;
 
+import java.math.BigDecimal;
 import java.util.Objects;
 import java.util.function.Function;
 
@@ -10,8 +12,16 @@ import java.util.function.Function;
 public class RemoteFileWithMeta {
     private final RemoteFile file;
     private final BackupType type;
-    private final long firstLSN;
-    private final long databaseBackupLSN;
+    /**
+     * LSNs are numeric(25,0) and don't fit in a long
+     */
+    private final BigDecimal firstLSN;
+    private final BigDecimal lastLSN;
+    private final BigDecimal databaseBackupLSN;
+    /**
+     * Size of the backup in bytes, before compression
+     */
+    private final long backupSize;
     private final String backupFinishDate;
     private final String machineName;
 
@@ -20,13 +30,16 @@ public class RemoteFileWithMeta {
     }
 
     public RemoteFileWithMeta(Client c, RemoteFile file) {
-        var result = c.withRows("RESTORE HEADERONLY FROM DISK = N'" + file.getPath() + "' WITH NOUNLOAD;", (cs, rs) -> {
+        var unload = BackupDevice.isUrl(file.getPath()) ? "" : " WITH NOUNLOAD";
+        var result = c.withRows("RESTORE HEADERONLY FROM " + BackupDevice.of(file.getPath()) + unload + ";", (cs, rs) -> {
         }).join();
 
         this.file = file;
         this.type = BackupType.from(toNumber(result.get(0).get("BackupType"), Number::intValue));
-        this.firstLSN = toNumber(result.get(0).get("FirstLSN"), Number::longValue);
-        this.databaseBackupLSN = toNumber(result.get(0).get("DatabaseBackupLSN"), Number::longValue);
+        this.firstLSN = toLsn(result.get(0).get("FirstLSN"));
+        this.lastLSN = toLsn(result.get(0).get("LastLSN"));
+        this.databaseBackupLSN = toLsn(result.get(0).get("DatabaseBackupLSN"));
+        this.backupSize = toNumber(result.get(0).get("BackupSize"), Number::longValue);
         this.backupFinishDate = Objects.toString(result.get(0).get("BackupFinishDate"), "");
         this.machineName = Objects.toString(result.get(0).get("MachineName"), "");
     }
@@ -35,8 +48,26 @@ public class RemoteFileWithMeta {
         return type == BackupType.FULL;
     }
 
+    public boolean isLog() {
+        return type == BackupType.LOG;
+    }
+
     public boolean isPartialOf(RemoteFileWithMeta other) {
-        return type == BackupType.PARTIAL && other.type == BackupType.FULL && other.firstLSN == databaseBackupLSN;
+        return type == BackupType.PARTIAL && other.type == BackupType.FULL && other.firstLSN.compareTo(databaseBackupLSN) == 0;
+    }
+
+    /**
+     * Whether this log backup contains the given LSN, a log backup can be restored after a backup that ends within it
+     */
+    public boolean contains(BigDecimal lsn) {
+        return isLog() && firstLSN.compareTo(lsn) <= 0 && lastLSN.compareTo(lsn) > 0;
+    }
+
+    private BigDecimal toLsn(Object o) {
+        if (o instanceof BigDecimal bd) {
+            return bd;
+        }
+        return BigDecimal.valueOf(toNumber(o, Number::longValue));
     }
 
     private <T extends Number> T toNumber(Object o, Function<Number, T> getter) {
@@ -44,11 +75,12 @@ public class RemoteFileWithMeta {
     }
 
     public enum BackupType {
-        FULL, PARTIAL, UNSUPPORTED;
+        FULL, PARTIAL, LOG, UNSUPPORTED;
 
         public static BackupType from(int value) {
             return switch (value) {
                 case 1 -> FULL;
+                case 2 -> LOG;
                 case 5 -> PARTIAL;
                 default -> UNSUPPORTED;
             };
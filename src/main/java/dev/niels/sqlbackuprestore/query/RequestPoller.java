@@ -0,0 +1,125 @@
+package dev.niels.sqlbackuprestore.query;
+
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import dev.niels.sqlbackuprestore.action.Util;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongSupplier;
+
+/**
+ * Polls sys.dm_exec_requests for the request of the session that runs a backup or restore. The percentage is updated
+ * by the server continuously, so the progress doesn't jump with the STATS messages, and the server estimates the
+ * remaining time. The poller uses its own session because the session that runs the request is busy.
+ */
+@Slf4j
+public class RequestPoller implements AutoCloseable {
+    private static final long INTERVAL = 1;
+    private final Client client;
+    private final int sessionId;
+    private final LongSupplier size;
+    private final ProgressIndicator indicator;
+    private final ScheduledFuture<?> schedule;
+
+    /**
+     * @param size number of bytes the request processes, used for the throughput. 0 when unknown.
+     */
+    RequestPoller(Client c, int sessionId, LongSupplier size, ProgressIndicator indicator) {
+        this.client = QueryHelper.client(c);
+        this.sessionId = sessionId;
+        this.size = size;
+        this.indicator = indicator;
+        client.setTitle("Progress of session " + sessionId);
+        schedule = AppExecutorUtil.getAppScheduledExecutorService().scheduleWithFixedDelay(this::poll, INTERVAL, INTERVAL, TimeUnit.SECONDS);
+    }
+
+    /**
+     * The id of the session of the connection. Must be requested before the connection starts the request, the query
+     * is queued in front of it.
+     */
+    public static CompletableFuture<Integer> sessionId(Client c) {
+        return c.<Number>getSingle("SELECT @@SPID AS spid", "spid").thenApply(Number::intValue);
+    }
+
+    /**
+     * Wait for the session id, must not be called on the event thread.
+     *
+     * @return the session id, null when it couldn't be determined
+     */
+    static @Nullable Integer await(CompletableFuture<Integer> sessionId) {
+        try {
+            return sessionId.get(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException | RuntimeException e) {
+            log.warn("Unable to determine the session id", e);
+        }
+        return null;
+    }
+
+    /**
+     * The progress of the request that runs on the session, completes with null when the session runs no request.
+     */
+    public static CompletableFuture<Progress> progress(Client c, int sessionId) {
+        return c.getResult("SELECT percent_complete AS [percent], estimated_completion_time AS remaining, total_elapsed_time AS elapsed FROM sys.dm_exec_requests WHERE session_id = " + sessionId)
+                .thenApply(rows -> rows.isEmpty() ? null : new Progress(number(rows.get(0).get("percent")), (long) number(rows.get(0).get("remaining")), (long) number(rows.get(0).get("elapsed"))));
+    }
+
+    private void poll() {
+        try {
+            var progress = progress(client, sessionId).get(INTERVAL * 5, TimeUnit.SECONDS);
+            if (progress != null) {
+                update(progress);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException | RuntimeException e) {
+            log.debug("Unable to poll the progress of session {}", sessionId, e);
+        }
+    }
+
+    private void update(Progress progress) {
+        var percent = progress.percent();
+        if (percent <= 0) {
+            return;
+        }
+        var remaining = progress.remaining();
+        var elapsed = progress.elapsed();
+        var bytes = size.getAsLong();
+
+        var text = new StringBuilder(String.format("%.1f%%", percent));
+        if (bytes > 0 && elapsed > 0) {
+            text.append(", ").append(Util.humanReadableByteCountSI((long) (bytes * percent / 100 * 1000 / elapsed))).append("/s");
+        }
+        if (remaining > 0) {
+            text.append(", ").append(StringUtil.formatDuration(remaining)).append(" remaining");
+        }
+        indicator.setFraction(percent / 100);
+        indicator.setText2(text.toString());
+    }
+
+    private static double number(Object value) {
+        return value instanceof Number n ? n.doubleValue() : 0;
+    }
+
+    @Override
+    public void close() {
+        schedule.cancel(false);
+        client.close();
+    }
+
+    /**
+     * @param percent   percentage of the request that is completed
+     * @param remaining estimated milliseconds until the request completes
+     * @param elapsed   milliseconds since the request started
+     */
+    public record Progress(double percent, long remaining, long elapsed) {
+    }
+}
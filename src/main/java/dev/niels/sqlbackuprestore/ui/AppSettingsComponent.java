@@ -8,6 +8,7 @@ import com.intellij.util.ui.UIUtil.ComponentStyle;
 import com.intellij.util.ui.UIUtil.FontColor;
 import dev.niels.sqlbackuprestore.AppSettingsState;
 import lombok.Getter;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
 
 import javax.swing.JPanel;
@@ -17,14 +18,42 @@ public class AppSettingsComponent {
     private final JPanel mainPanel;
     private final JBTextField compressionSize = new JBTextField();
     private final JBCheckBox useCompressedBackup = new JBCheckBox("Use compressed backups");
+    private final JBCheckBox stripedBackup = new JBCheckBox("Ask for stripes when backing up");
+    private final JBCheckBox tuneBackupTransfer = new JBCheckBox("Tune backup buffers to the database size");
+    private final JBCheckBox verifyBackup = new JBCheckBox("Verify backups");
+    private final JBTextField backupConcurrency = new JBTextField();
+    private final JBTextField s3Stripes = new JBTextField();
+    private final JBTextField s3PartSize = new JBTextField();
+    private final JBTextField s3Region = new JBTextField();
     private final JBCheckBox useDbNameOnDownload = new JBCheckBox("Use DB name on backup and download");
     private final JBCheckBox askForRestoreFileLocations = new JBCheckBox("Ask for file locations when restoring");
     private final JBCheckBox enableDownloadOption = new JBCheckBox("Enable 'Backup and Download' option");
+    private final JBTextField downloadParallelism = new JBTextField();
+    private final JBCheckBox directDownload = new JBCheckBox("Download directly from the backup file");
+    private final JBCheckBox autoTunePartSize = new JBCheckBox("Tune the part size while downloading");
+    private final JBCheckBox verifyDownload = new JBCheckBox("Verify downloaded parts");
+    private final JBCheckBox deltaDownload = new JBCheckBox("Only download what changed since the previous download");
+    private final JBTextField downloadReadAhead = new JBTextField();
+    private final JBTextField downloadMemoryLimit = new JBTextField();
 
     public AppSettingsComponent() {
         mainPanel = FormBuilder.createFormBuilder()
                 .addComponent(useCompressedBackup)
                 .addComponent(new JBLabel("This is supported for SQL2008+", ComponentStyle.SMALL, FontColor.BRIGHTER))
+                .addComponent(stripedBackup)
+                .addComponent(new JBLabel("Writes a backup to multiple files, spread over one or more directories. Not used for 'Backup and Download'.", ComponentStyle.SMALL, FontColor.BRIGHTER))
+                .addComponent(tuneBackupTransfer)
+                .addComponent(new JBLabel("Sets BUFFERCOUNT, MAXTRANSFERSIZE and BLOCKSIZE based on the size of the database and the number of stripes.", ComponentStyle.SMALL, FontColor.BRIGHTER))
+                .addComponent(verifyBackup)
+                .addComponent(new JBLabel("Writes checksums and runs RESTORE VERIFYONLY on a separate session after every backup.", ComponentStyle.SMALL, FontColor.BRIGHTER))
+                .addLabeledComponent("Number of backups at the same time per server", backupConcurrency)
+                .addComponent(new JBLabel("Used when multiple databases are selected, the other backups wait until one finishes.", ComponentStyle.SMALL, FontColor.BRIGHTER))
+                .addVerticalGap(1)
+                .addLabeledComponent("Number of URLs for backups to S3", s3Stripes)
+                .addLabeledComponent("S3 part size (MB)", s3PartSize)
+                .addComponent(new JBLabel("5 to 20MB. A URL holds at most 10,000 parts, stripe larger backups over more URLs (SQL2022+).", ComponentStyle.SMALL, FontColor.BRIGHTER))
+                .addLabeledComponent("S3 region", s3Region)
+                .addComponent(new JBLabel("Used to sign the requests of the bucket browser.", ComponentStyle.SMALL, FontColor.BRIGHTER))
                 .addVerticalGap(1)
                 .addLabeledComponent("Ask for custom compression when downloading file bigger than (MB)", compressionSize)
                 .addComponent(new JBLabel("0 or empty to always ask.", ComponentStyle.SMALL, FontColor.BRIGHTER))
@@ -37,6 +66,19 @@ public class AppSettingsComponent {
                 .addVerticalGap(1)
                 .addComponent(enableDownloadOption)
                 .addComponent(new JBLabel("Can be used to download a backup from a remote database, not very useful for local database servers", ComponentStyle.SMALL, FontColor.BRIGHTER))
+                .addLabeledComponent("Number of sessions used for downloading", downloadParallelism)
+                .addComponent(new JBLabel("Every session downloads its own parts of the file, 1 or empty to download sequentially.", ComponentStyle.SMALL, FontColor.BRIGHTER))
+                .addComponent(directDownload)
+                .addComponent(new JBLabel("Reads the parts from the file instead of copying the whole file into tempdb first. Not used when compressing on the server.", ComponentStyle.SMALL, FontColor.BRIGHTER))
+                .addComponent(autoTunePartSize)
+                .addComponent(new JBLabel("Measures the throughput and grows or shrinks the parts, the size is remembered for the next download from the same data source.", ComponentStyle.SMALL, FontColor.BRIGHTER))
+                .addComponent(verifyDownload)
+                .addComponent(new JBLabel("Compares the hash of every part with a hash calculated by the server (SQL2016+) and writes the hashes to a .sha256 file.", ComponentStyle.SMALL, FontColor.BRIGHTER))
+                .addComponent(deltaDownload)
+                .addComponent(new JBLabel("When downloading to an existing file, unchanged blocks are copied from it instead of downloaded (SQL2016+). Not used when compressing.", ComponentStyle.SMALL, FontColor.BRIGHTER))
+                .addLabeledComponent("Number of chunks to read ahead while writing", downloadReadAhead)
+                .addLabeledComponent("Memory for received data that is not written yet (MB)", downloadMemoryLimit)
+                .addComponent(new JBLabel("Received chunks are written by a separate thread so the download doesn't wait for the disk. 0 or empty to write directly.", ComponentStyle.SMALL, FontColor.BRIGHTER))
                 .addComponentFillVertically(new JPanel(), 0)
                 .getPanel();
     }
@@ -45,12 +87,34 @@ public class AppSettingsComponent {
         var current = AppSettingsState.getInstance();
         var modified = !parse(compressionSize.getText()).equals(current.getCompressionSize());
         modified |= useCompressedBackup.isSelected() != current.isUseCompressedBackup();
+        modified |= stripedBackup.isSelected() != current.isStripedBackup();
+        modified |= tuneBackupTransfer.isSelected() != current.isTuneBackupTransfer();
+        modified |= verifyBackup.isSelected() != current.isVerifyBackup();
+        modified |= Math.max(1, parse(backupConcurrency.getText()).intValue()) != current.getBackupConcurrency();
+        modified |= s3Stripes() != current.getS3Stripes();
+        modified |= s3PartSize() != current.getS3PartSize();
+        modified |= !s3Region.getText().trim().equals(current.getS3Region());
         modified |= useDbNameOnDownload.isSelected() != current.isUseDbNameOnDownload();
         modified |= askForRestoreFileLocations.isSelected() != current.isAskForRestoreFileLocations();
         modified |= enableDownloadOption.isSelected() != current.isEnableDownloadOption();
+        modified |= Math.max(1, parse(downloadParallelism.getText()).intValue()) != current.getDownloadParallelism();
+        modified |= directDownload.isSelected() != current.isDirectDownload();
+        modified |= autoTunePartSize.isSelected() != current.isAutoTunePartSize();
+        modified |= verifyDownload.isSelected() != current.isVerifyDownload();
+        modified |= deltaDownload.isSelected() != current.isDeltaDownload();
+        modified |= Math.max(0, parse(downloadReadAhead.getText()).intValue()) != current.getDownloadReadAhead();
+        modified |= Math.max(1, parse(downloadMemoryLimit.getText()).intValue()) != current.getDownloadMemoryLimit();
         return modified;
     }
 
+    private int s3Stripes() {
+        return Math.min(64, Math.max(1, parse(s3Stripes.getText()).intValue()));
+    }
+
+    private int s3PartSize() {
+        return Math.min(20, Math.max(5, parse(s3PartSize.getText()).intValue()));
+    }
+
     private Long parse(String in) {
         try {
             return NumberUtils.createNumber(in).longValue();
@@ -63,17 +127,45 @@ public class AppSettingsComponent {
         var current = AppSettingsState.getInstance();
         current.setCompressionSize(parse(compressionSize.getText()));
         current.setUseCompressedBackup(useCompressedBackup.isSelected());
+        current.setStripedBackup(stripedBackup.isSelected());
+        current.setTuneBackupTransfer(tuneBackupTransfer.isSelected());
+        current.setVerifyBackup(verifyBackup.isSelected());
+        current.setBackupConcurrency(Math.max(1, parse(backupConcurrency.getText()).intValue()));
+        current.setS3Stripes(s3Stripes());
+        current.setS3PartSize(s3PartSize());
+        current.setS3Region(StringUtils.defaultIfBlank(s3Region.getText().trim(), "us-east-1"));
         current.setUseDbNameOnDownload(useDbNameOnDownload.isSelected());
         current.setAskForRestoreFileLocations(askForRestoreFileLocations.isSelected());
         current.setEnableDownloadOption(enableDownloadOption.isSelected());
+        current.setDownloadParallelism(Math.max(1, parse(downloadParallelism.getText()).intValue()));
+        current.setDirectDownload(directDownload.isSelected());
+        current.setAutoTunePartSize(autoTunePartSize.isSelected());
+        current.setVerifyDownload(verifyDownload.isSelected());
+        current.setDeltaDownload(deltaDownload.isSelected());
+        current.setDownloadReadAhead(Math.max(0, parse(downloadReadAhead.getText()).intValue()));
+        current.setDownloadMemoryLimit(Math.max(1, parse(downloadMemoryLimit.getText()).intValue()));
     }
 
     public void reset() {
         var current = AppSettingsState.getInstance();
         compressionSize.setText(current.getCompressionSize() == 0L ? "" : "" + current.getCompressionSize());
         useCompressedBackup.setSelected(current.isUseCompressedBackup());
+        stripedBackup.setSelected(current.isStripedBackup());
+        tuneBackupTransfer.setSelected(current.isTuneBackupTransfer());
+        verifyBackup.setSelected(current.isVerifyBackup());
+        backupConcurrency.setText("" + current.getBackupConcurrency());
+        s3Stripes.setText("" + current.getS3Stripes());
+        s3PartSize.setText("" + current.getS3PartSize());
+        s3Region.setText(current.getS3Region());
         useDbNameOnDownload.setSelected(current.isUseDbNameOnDownload());
         askForRestoreFileLocations.setSelected(current.isAskForRestoreFileLocations());
         enableDownloadOption.setSelected(current.isEnableDownloadOption());
+        downloadParallelism.setText(current.getDownloadParallelism() <= 1 ? "" : "" + current.getDownloadParallelism());
+        directDownload.setSelected(current.isDirectDownload());
+        autoTunePartSize.setSelected(current.isAutoTunePartSize());
+        verifyDownload.setSelected(current.isVerifyDownload());
+        deltaDownload.setSelected(current.isDeltaDownload());
+        downloadReadAhead.setText(current.getDownloadReadAhead() == 0 ? "" : "" + current.getDownloadReadAhead());
+        downloadMemoryLimit.setText("" + current.getDownloadMemoryLimit());
     }
 }
@@ -0,0 +1,106 @@
+package dev.niels.sqlbackuprestore.ui;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.DialogWrapper;
+import com.intellij.openapi.ui.TextFieldWithBrowseButton;
+import com.intellij.openapi.ui.ValidationInfo;
+import com.intellij.ui.JBIntSpinner;
+import com.intellij.ui.components.JBCheckBox;
+import com.intellij.ui.components.JBLabel;
+import com.intellij.util.ui.FormBuilder;
+import com.intellij.util.ui.UIUtil.ComponentStyle;
+import com.intellij.util.ui.UIUtil.FontColor;
+import dev.niels.sqlbackuprestore.backup.BackupSchedule;
+import dev.niels.sqlbackuprestore.query.Client;
+import dev.niels.sqlbackuprestore.ui.filedialog.FileDialog;
+import one.util.streamex.EntryStream;
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.BoxLayout;
+import javax.swing.JComponent;
+import javax.swing.JPanel;
+import java.time.DayOfWeek;
+import java.time.format.TextStyle;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Edits the backup schedule of a database, selecting no days removes the schedule.
+ */
+public class BackupScheduleDialog extends DialogWrapper {
+    private final Map<DayOfWeek, JBCheckBox> days = new EnumMap<>(DayOfWeek.class);
+    private final JBIntSpinner hour;
+    private final JBIntSpinner retention;
+    private final TextFieldWithBrowseButton directory = new TextFieldWithBrowseButton();
+
+    private BackupScheduleDialog(@Nullable Project project, Client connection, String database, BackupSchedule schedule) {
+        super(project);
+        var selected = schedule.getDaysOfWeek();
+        for (var day : DayOfWeek.values()) {
+            days.put(day, new JBCheckBox(day.getDisplayName(TextStyle.SHORT, Locale.getDefault()), selected.contains(day)));
+        }
+        hour = new JBIntSpinner(schedule.getHour(), 0, 23);
+        retention = new JBIntSpinner(schedule.getRetentionDays(), 0, 3650);
+        directory.setText(StringUtils.defaultString(schedule.getDirectory()));
+        directory.addActionListener(e -> {
+            var chosen = FileDialog.chooseDirectory(project, connection, "Scheduled Backups of " + database);
+            if (chosen != null) {
+                directory.setText(chosen.getPath());
+            }
+        });
+
+        init();
+        setTitle("Backup Schedule of " + database);
+    }
+
+    /**
+     * Must be called on the event thread.
+     *
+     * @param current the current schedule of the database, null when it doesn't have one
+     * @return the changed schedule, without days when the schedule should be removed, null when cancelled
+     */
+    public static @Nullable BackupSchedule edit(@Nullable Project project, Client connection, String database, @Nullable BackupSchedule current) {
+        var schedule = current != null ? current : new BackupSchedule().setDataSource(connection.getDataSource().getUniqueId()).setDatabase(database);
+        var dialog = new BackupScheduleDialog(project, connection, database, schedule);
+        if (!dialog.showAndGet()) {
+            return null;
+        }
+
+        return new BackupSchedule()
+                .setDataSource(schedule.getDataSource())
+                .setDatabase(database)
+                .setDirectory(dialog.directory.getText().trim())
+                .setDaysOfWeek(EntryStream.of(dialog.days).filterValues(JBCheckBox::isSelected).keys().toSet())
+                .setHour(dialog.hour.getNumber())
+                .setRetentionDays(dialog.retention.getNumber())
+                .setLastRun(schedule.getLastRun());
+    }
+
+    @Override
+    protected @Nullable ValidationInfo doValidate() {
+        var anyDay = days.values().stream().anyMatch(JBCheckBox::isSelected);
+        if (anyDay && StringUtils.isBlank(directory.getText())) {
+            return new ValidationInfo("Choose the directory the backups are written to", directory);
+        }
+        return null;
+    }
+
+    @Override
+    protected @Nullable JComponent createCenterPanel() {
+        var dayPanel = new JPanel();
+        dayPanel.setLayout(new BoxLayout(dayPanel, BoxLayout.X_AXIS));
+        days.values().forEach(dayPanel::add);
+
+        return FormBuilder.createFormBuilder()
+                .addLabeledComponent("Days", dayPanel)
+                .addComponent(new JBLabel("Select no days to remove the schedule.", ComponentStyle.SMALL, FontColor.BRIGHTER))
+                .addLabeledComponent("From hour", hour)
+                .addComponent(new JBLabel("Backups only run while the IDE is open, a missed backup runs when the project is opened later that day.", ComponentStyle.SMALL, FontColor.BRIGHTER))
+                .addLabeledComponent("Directory", directory)
+                .addLabeledComponent("Keep backups for (days)", retention)
+                .addComponent(new JBLabel("Older scheduled backups are deleted by the server after a successful backup, 0 keeps all.", ComponentStyle.SMALL, FontColor.BRIGHTER))
+                .getPanel();
+    }
+}
@@ -0,0 +1,75 @@
+package dev.niels.sqlbackuprestore.ui;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.DialogWrapper;
+import com.intellij.ui.CollectionListModel;
+import com.intellij.ui.JBIntSpinner;
+import com.intellij.ui.ToolbarDecorator;
+import com.intellij.ui.components.JBList;
+import com.intellij.util.ui.FormBuilder;
+import dev.niels.sqlbackuprestore.query.Client;
+import dev.niels.sqlbackuprestore.ui.filedialog.FileDialog;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.JComponent;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Asks for the number of files (stripes) a backup is written to and the directories the stripes are spread over.
+ */
+public class BackupStripesDialog extends DialogWrapper {
+    private final Project project;
+    private final Client connection;
+    private final JBIntSpinner count;
+    private final CollectionListModel<String> directories;
+
+    private BackupStripesDialog(@Nullable Project project, Client connection, int stripes, String directory) {
+        super(project);
+        this.project = project;
+        this.connection = connection;
+        count = new JBIntSpinner(Math.max(1, stripes), 1, 64);
+        directories = new CollectionListModel<>(directory);
+
+        init();
+        setTitle("Backup Stripes");
+    }
+
+    /**
+     * Must be called on the event thread.
+     *
+     * @return the directory of every stripe, null when cancelled
+     */
+    public static @Nullable List<String> choose(@Nullable Project project, Client connection, int stripes, String directory) {
+        var dialog = new BackupStripesDialog(project, connection, stripes, directory);
+        if (!dialog.showAndGet() || dialog.directories.isEmpty()) {
+            return null;
+        }
+
+        // Spread the stripes over the directories
+        var result = new ArrayList<String>();
+        for (var i = 0; i < dialog.count.getNumber(); i++) {
+            result.add(dialog.directories.getElementAt(i % dialog.directories.getSize()));
+        }
+        return result;
+    }
+
+    @Override
+    protected @Nullable JComponent createCenterPanel() {
+        var list = new JBList<>(directories);
+        var decorated = ToolbarDecorator.createDecorator(list)
+                .setAddAction(b -> {
+                    var directory = FileDialog.chooseDirectory(project, connection, "Add Stripe Directory");
+                    if (directory != null && !directories.contains(directory.getPath())) {
+                        directories.add(directory.getPath());
+                    }
+                })
+                .disableUpDownActions()
+                .createPanel();
+
+        return FormBuilder.createFormBuilder()
+                .addLabeledComponent("Number of files", count)
+                .addLabeledComponentFillVertically("Directories", decorated)
+                .getPanel();
+    }
+}
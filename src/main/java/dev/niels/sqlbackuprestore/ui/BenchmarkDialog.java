@@ -0,0 +1,73 @@
+package dev.niels.sqlbackuprestore.ui;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.DialogWrapper;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.ui.table.JBTable;
+import dev.niels.sqlbackuprestore.action.Util;
+import dev.niels.sqlbackuprestore.backup.BackupProfile;
+import dev.niels.sqlbackuprestore.backup.Benchmark.Result;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.JComponent;
+import javax.swing.ListSelectionModel;
+import javax.swing.table.DefaultTableModel;
+import java.util.List;
+
+/**
+ * Shows the results of a backup benchmark from fast to slow, the selected result can be saved as the default.
+ */
+public class BenchmarkDialog extends DialogWrapper {
+    private final List<Result> results;
+    private JBTable table;
+
+    private BenchmarkDialog(@Nullable Project project, String database, List<Result> results) {
+        super(project);
+        this.results = results;
+
+        init();
+        setTitle("Backup Benchmark of " + database);
+        setOKButtonText("Save as Default");
+    }
+
+    /**
+     * Must be called on the event thread.
+     *
+     * @return the profile to save as the default, null if nothing should be saved
+     */
+    public static @Nullable BackupProfile show(@Nullable Project project, String database, List<Result> results) {
+        var dialog = new BenchmarkDialog(project, database, results);
+        if (!dialog.showAndGet() || dialog.table.getSelectedRow() < 0) {
+            return null;
+        }
+        return results.get(dialog.table.getSelectedRow()).profile();
+    }
+
+    @Override
+    protected @Nullable JComponent createCenterPanel() {
+        var model = new DefaultTableModel(new String[]{"#", "MB/sec", "Seconds", "Buffers", "Transfer size", "Stripes", "Compression"}, 0) {
+            @Override public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        for (var i = 0; i < results.size(); i++) {
+            var result = results.get(i);
+            var profile = result.profile();
+            model.addRow(new Object[]{
+                    i + 1,
+                    String.format("%.1f", result.mbPerSecond()),
+                    String.format("%.1f", result.seconds()),
+                    profile.bufferCount(),
+                    Util.humanReadableByteCountSI(profile.maxTransferSize()),
+                    profile.stripes(),
+                    profile.compression() ? "Yes" : "No"});
+        }
+
+        table = new JBTable(model);
+        table.getSelectionModel().setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        if (!results.isEmpty()) {
+            table.setRowSelectionInterval(0, 0);
+        }
+        return new JBScrollPane(table);
+    }
+}
@@ -0,0 +1,113 @@
+package dev.niels.sqlbackuprestore.ui;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.DialogWrapper;
+import com.intellij.ui.components.JBCheckBox;
+import com.intellij.ui.components.JBLabel;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.ui.table.JBTable;
+import com.intellij.util.ui.FormBuilder;
+import com.intellij.util.ui.UIUtil.ComponentStyle;
+import com.intellij.util.ui.UIUtil.FontColor;
+import dev.niels.sqlbackuprestore.action.Util;
+import dev.niels.sqlbackuprestore.backup.Filegroup;
+import dev.niels.sqlbackuprestore.backup.FilegroupSelection;
+import one.util.streamex.IntStreamEx;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.JComponent;
+import javax.swing.table.DefaultTableModel;
+import java.util.List;
+
+/**
+ * Lists the filegroups of a database with their sizes and asks which of them are backed up.
+ */
+public class FilegroupDialog extends DialogWrapper {
+    private static final int BACKUP = 0;
+    private final List<Filegroup> filegroups;
+    private final JBCheckBox readWrite = new JBCheckBox("All read-write filegroups (READ_WRITE_FILEGROUPS)", true);
+    private final JBLabel total = new JBLabel("", ComponentStyle.SMALL, FontColor.BRIGHTER);
+    private final DefaultTableModel model;
+
+    private FilegroupDialog(@Nullable Project project, String database, List<Filegroup> filegroups) {
+        super(project);
+        this.filegroups = filegroups;
+        model = new DefaultTableModel(new String[]{"Backup", "Filegroup", "Read-only", "Size", "Used"}, 0) {
+            @Override public Class<?> getColumnClass(int column) {
+                return column == BACKUP ? Boolean.class : String.class;
+            }
+
+            @Override public boolean isCellEditable(int row, int column) {
+                // Read-write filegroups are always part of a READ_WRITE_FILEGROUPS backup
+                return column == BACKUP && !(readWrite.isSelected() && !filegroups.get(row).readOnly());
+            }
+        };
+        filegroups.forEach(fg -> model.addRow(new Object[]{
+                !fg.readOnly(),
+                fg.name(),
+                fg.readOnly() ? "Yes" : "",
+                Util.humanReadableByteCountSI(fg.size()),
+                Util.humanReadableByteCountSI(fg.used())
+        }));
+        model.addTableModelListener(x -> update());
+        readWrite.addActionListener(x -> {
+            if (readWrite.isSelected()) {
+                IntStreamEx.range(filegroups.size()).filter(i -> !filegroups.get(i).readOnly()).forEach(i -> model.setValueAt(true, i, BACKUP));
+            }
+            update();
+        });
+
+        init();
+        setTitle("Backup Filegroups of " + database);
+        update();
+    }
+
+    /**
+     * Must be called on the event thread.
+     *
+     * @return the selected filegroups, null when cancelled
+     */
+    public static @Nullable FilegroupSelection choose(@Nullable Project project, String database, List<Filegroup> filegroups) {
+        var dialog = new FilegroupDialog(project, database, filegroups);
+        if (!dialog.showAndGet()) {
+            return null;
+        }
+        return dialog.getSelection();
+    }
+
+    private List<Filegroup> getSelected() {
+        return IntStreamEx.range(filegroups.size())
+                .filter(i -> Boolean.TRUE.equals(model.getValueAt(i, BACKUP)))
+                .mapToObj(filegroups::get)
+                .toList();
+    }
+
+    private FilegroupSelection getSelection() {
+        var selected = getSelected();
+        return selected.size() == filegroups.size() ? FilegroupSelection.DATABASE : new FilegroupSelection(readWrite.isSelected(), selected);
+    }
+
+    private void update() {
+        var selected = getSelected();
+        var used = selected.stream().mapToLong(Filegroup::used).sum();
+        var database = filegroups.stream().mapToLong(Filegroup::used).sum();
+        total.setText(String.format("Backs up %s of the %s used by the database", Util.humanReadableByteCountSI(used), Util.humanReadableByteCountSI(database)));
+        setOKActionEnabled(!selected.isEmpty());
+    }
+
+    @Override
+    protected @Nullable JComponent createCenterPanel() {
+        var table = new JBTable(model);
+        table.getColumnModel().getColumn(0).setPreferredWidth(60);
+        table.getColumnModel().getColumn(1).setPreferredWidth(200);
+        table.getColumnModel().getColumn(2).setPreferredWidth(75);
+        table.getColumnModel().getColumn(3).setPreferredWidth(100);
+        table.getColumnModel().getColumn(4).setPreferredWidth(100);
+
+        return FormBuilder.createFormBuilder()
+                .addComponent(readWrite)
+                .addComponentFillVertically(new JBScrollPane(table), 0)
+                .addComponent(total)
+                .getPanel();
+    }
+}
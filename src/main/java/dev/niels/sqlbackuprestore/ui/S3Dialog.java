@@ -0,0 +1,199 @@
+package dev.niels.sqlbackuprestore.ui;
+
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.DialogWrapper;
+import com.intellij.openapi.ui.ValidationInfo;
+import com.intellij.ui.CollectionListModel;
+import com.intellij.ui.DoubleClickListener;
+import com.intellij.ui.SimpleListCellRenderer;
+import com.intellij.ui.components.JBLabel;
+import com.intellij.ui.components.JBList;
+import com.intellij.ui.components.JBPasswordField;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.ui.components.JBTextField;
+import com.intellij.util.ui.FormBuilder;
+import com.intellij.util.ui.UIUtil.ComponentStyle;
+import com.intellij.util.ui.UIUtil.FontColor;
+import dev.niels.sqlbackuprestore.AppSettingsState;
+import dev.niels.sqlbackuprestore.action.Util;
+import dev.niels.sqlbackuprestore.backup.S3Client;
+import dev.niels.sqlbackuprestore.backup.S3Client.S3Object;
+import dev.niels.sqlbackuprestore.backup.S3Credentials;
+import dev.niels.sqlbackuprestore.backup.S3Location;
+import one.util.streamex.StreamEx;
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.JButton;
+import javax.swing.JComponent;
+import javax.swing.ListSelectionModel;
+import java.awt.event.MouseEvent;
+import java.util.List;
+
+/**
+ * Bucket browser for backups in S3 compatible storage, the counterpart of FileDialog. The access key is stored in the
+ * password safe when the dialog is closed with OK.
+ */
+public class S3Dialog extends DialogWrapper {
+    private final @Nullable Project project;
+    private final boolean save;
+    private final JBTextField endpoint = new JBTextField();
+    private final JBTextField bucket = new JBTextField();
+    private final JBTextField accessKey = new JBTextField();
+    private final JBPasswordField secretKey = new JBPasswordField();
+    private final JBTextField prefix = new JBTextField();
+    private final JBTextField fileName = new JBTextField();
+    private final CollectionListModel<S3Object> objects = new CollectionListModel<>();
+    private final JBList<S3Object> list = new JBList<>(objects);
+
+    private S3Dialog(@Nullable Project project, String title, boolean save, String fileName) {
+        super(project);
+        this.project = project;
+        this.save = save;
+
+        var settings = AppSettingsState.getInstance();
+        endpoint.setText(settings.getS3Endpoint());
+        bucket.setText(settings.getS3Bucket());
+        prefix.setText(settings.getS3Prefix());
+        this.fileName.setText(fileName);
+        var location = location();
+        var credentials = location == null ? null : S3Credentials.get(location);
+        if (credentials != null) {
+            accessKey.setText(credentials.getUserName());
+            secretKey.setText(credentials.getPasswordAsString());
+        }
+
+        list.setSelectionMode(save ? ListSelectionModel.SINGLE_SELECTION : ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        list.setCellRenderer(SimpleListCellRenderer.create("", o -> o.key() + "  (" + Util.humanReadableByteCountSI(o.size()) + ")"));
+        list.addListSelectionListener(e -> {
+            if (save && list.getSelectedValue() != null) {
+                this.fileName.setText(StringUtils.removeStart(list.getSelectedValue().key(), prefix()));
+            }
+        });
+        new DoubleClickListener() {
+            @Override
+            protected boolean onDoubleClick(@NotNull MouseEvent event) {
+                doOKAction();
+                return true;
+            }
+        }.installOn(list);
+
+        init();
+        setTitle(title);
+    }
+
+    /**
+     * Choose the URL to write a backup to. Must be called on the event thread.
+     *
+     * @return the URL, null when cancelled
+     */
+    public static @Nullable S3Location saveFile(@Nullable Project project, String fileName, String title) {
+        var dialog = new S3Dialog(project, title, true, fileName);
+        if (!dialog.showAndGet()) {
+            return null;
+        }
+        return dialog.location().withKey(dialog.prefix() + dialog.fileName.getText().trim());
+    }
+
+    /**
+     * Choose backups to restore. Must be called on the event thread.
+     *
+     * @return the chosen objects, empty when cancelled
+     */
+    public static List<S3Location> chooseFiles(@Nullable Project project, String title) {
+        var dialog = new S3Dialog(project, title, false, "");
+        if (!dialog.showAndGet()) {
+            return List.of();
+        }
+        var location = dialog.location();
+        return StreamEx.of(dialog.list.getSelectedValuesList()).map(o -> location.withKey(o.key())).toList();
+    }
+
+    private @Nullable S3Location location() {
+        if (StringUtils.isAnyBlank(endpoint.getText(), bucket.getText())) {
+            return null;
+        }
+        return new S3Location(endpoint.getText().trim(), bucket.getText().trim(), "");
+    }
+
+    private String prefix() {
+        var result = StringUtils.strip(prefix.getText().trim(), "/");
+        return result.isEmpty() ? "" : result + "/";
+    }
+
+    private void refresh() {
+        var location = location();
+        if (location == null || StringUtils.isAnyBlank(accessKey.getText(), new String(secretKey.getPassword()))) {
+            setErrorText("Fill in the endpoint, bucket and access key first");
+            return;
+        }
+        var client = new S3Client(location.endpoint(), AppSettingsState.getInstance().getS3Region(), accessKey.getText().trim(), new String(secretKey.getPassword()));
+        var path = prefix();
+        try {
+            var result = ProgressManager.getInstance().runProcessWithProgressSynchronously(() -> client.list(location.bucket(), path), "Listing " + location.credentialName(), true, project);
+            objects.replaceAll(StreamEx.of(result).filter(o -> !o.key().endsWith("/")).toList());
+            setErrorText(null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            setErrorText("Unable to list the bucket: " + e.getMessage());
+        }
+    }
+
+    @Override
+    protected @Nullable ValidationInfo doValidate() {
+        if (StringUtils.isBlank(endpoint.getText())) {
+            return new ValidationInfo("Fill in the endpoint", endpoint);
+        }
+        if (StringUtils.isBlank(bucket.getText())) {
+            return new ValidationInfo("Fill in the bucket", bucket);
+        }
+        if (StringUtils.isBlank(accessKey.getText()) || secretKey.getPassword().length == 0) {
+            return new ValidationInfo("Fill in the access key and secret", accessKey);
+        }
+        if (save && StringUtils.isBlank(fileName.getText())) {
+            return new ValidationInfo("Fill in the name of the backup", fileName);
+        }
+        if (!save && list.isSelectionEmpty()) {
+            return new ValidationInfo("Select the backup to restore", list);
+        }
+        return null;
+    }
+
+    @Override
+    protected void doOKAction() {
+        var invalid = doValidate();
+        if (invalid != null) {
+            setErrorText(invalid.message, invalid.component);
+            return;
+        }
+        S3Credentials.set(location(), accessKey.getText().trim(), new String(secretKey.getPassword()));
+        AppSettingsState.getInstance()
+                .setS3Endpoint(endpoint.getText().trim())
+                .setS3Bucket(bucket.getText().trim())
+                .setS3Prefix(prefix.getText().trim());
+        super.doOKAction();
+    }
+
+    @Override
+    protected @Nullable JComponent createCenterPanel() {
+        var listButton = new JButton("List Objects");
+        listButton.addActionListener(e -> refresh());
+
+        var builder = FormBuilder.createFormBuilder()
+                .addLabeledComponent("Endpoint", endpoint)
+                .addComponent(new JBLabel("Host and port of the storage, i.e. s3.amazonaws.com or minio.local:9000. SQL Server 2022 is required and connects with TLS.", ComponentStyle.SMALL, FontColor.BRIGHTER))
+                .addLabeledComponent("Bucket", bucket)
+                .addLabeledComponent("Access key", accessKey)
+                .addLabeledComponent("Secret key", secretKey)
+                .addLabeledComponent("Folder", prefix)
+                .addComponent(listButton)
+                .addComponentFillVertically(new JBScrollPane(list), 0);
+        if (save) {
+            builder.addLabeledComponent("Name", fileName);
+        }
+        return builder.getPanel();
+    }
+}
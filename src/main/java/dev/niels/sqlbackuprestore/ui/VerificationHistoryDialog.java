@@ -0,0 +1,61 @@
+package dev.niels.sqlbackuprestore.ui;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.DialogWrapper;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.ui.table.JBTable;
+import dev.niels.sqlbackuprestore.backup.VerificationResult;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.Action;
+import javax.swing.JComponent;
+import javax.swing.table.DefaultTableModel;
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Shows the results of the last backup verifications.
+ */
+public class VerificationHistoryDialog extends DialogWrapper {
+    private final List<VerificationResult> history;
+
+    public VerificationHistoryDialog(@Nullable Project project, List<VerificationResult> history) {
+        super(project);
+        this.history = history;
+
+        init();
+        setTitle("Verification History");
+    }
+
+    @Override
+    protected Action @NotNull [] createActions() {
+        return new Action[]{getOKAction()};
+    }
+
+    @Override
+    protected @Nullable JComponent createCenterPanel() {
+        var model = new DefaultTableModel(new String[]{"Finished", "Data source", "Database", "Result", "Files"}, 0) {
+            @Override public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        var format = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT);
+        history.forEach(r -> model.addRow(new String[]{
+                format.format(new Date(r.getFinished())),
+                r.getDataSource(),
+                r.getDatabase(),
+                r.isValid() ? "Valid" : r.getMessage(),
+                r.getPaths()
+        }));
+
+        var table = new JBTable(model);
+        table.getColumnModel().getColumn(0).setPreferredWidth(120);
+        table.getColumnModel().getColumn(1).setPreferredWidth(100);
+        table.getColumnModel().getColumn(2).setPreferredWidth(100);
+        table.getColumnModel().getColumn(3).setPreferredWidth(200);
+        table.getColumnModel().getColumn(4).setPreferredWidth(240);
+        return new JBScrollPane(table);
+    }
+}
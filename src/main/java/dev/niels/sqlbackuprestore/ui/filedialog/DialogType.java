@@ -1,5 +1,5 @@
 package dev.niels.sqlbackuprestore.ui.filedialog;
 
 public enum DialogType {
-    SAVE, LOAD
+    SAVE, LOAD, DIRECTORY
 }
\ No newline at end of file
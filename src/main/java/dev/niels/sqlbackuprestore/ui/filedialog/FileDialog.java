@@ -21,6 +21,7 @@ import org.jetbrains.annotations.Nullable;
 
 import java.util.Optional;
 
+import static dev.niels.sqlbackuprestore.ui.filedialog.DialogType.DIRECTORY;
 import static dev.niels.sqlbackuprestore.ui.filedialog.DialogType.LOAD;
 import static dev.niels.sqlbackuprestore.ui.filedialog.DialogType.SAVE;
 
@@ -46,6 +47,13 @@ public class FileDialog {
         return ArrayUtils.get(new FileDialog(project, c, title).choose(SAVE, fileName), 0);
     }
 
+    /**
+     * Open the file dialog to choose a directory from the connection.
+     */
+    public static RemoteFile chooseDirectory(Project project, Client c, String title) {
+        return ArrayUtils.get(new FileDialog(project, c, title).choose(DIRECTORY, null), 0);
+    }
+
     private RemoteFile[] choose(DialogType type, String fileName) {
         var fs = new DatabaseFileSystem(connection);
         var roots = fs.getRoots();
@@ -59,6 +67,8 @@ public class FileDialog {
 
         if (type == LOAD) {
             return loadFile(roots, initial);
+        } else if (type == DIRECTORY) {
+            return loadDirectory(roots, initial);
         } else {
             return saveFile(fileName, roots, initial);
         }
@@ -81,6 +91,18 @@ public class FileDialog {
         return result;
     }
 
+    private @NotNull RemoteFile @NotNull [] loadDirectory(VirtualFile[] roots, RemoteFile initial) {
+        var descriptor = new FileChooserDescriptor(false, true, false, false, false, false)
+                .withRoots(roots);
+        descriptor.setTitle(title);
+        descriptor.setDescription(DESCRIPTION);
+        descriptor.setForcedToUseIdeaFileChooser(true);
+
+        var chooser = FileChooserFactory.getInstance().createFileChooser(descriptor, project, null);
+        var choice = initial == null ? chooser.choose(project) : chooser.choose(project, initial);
+        return StreamEx.of(choice).select(RemoteFile.class).toArray(RemoteFile[]::new);
+    }
+
     private @NotNull RemoteFile @NotNull [] saveFile(String fileName, VirtualFile[] roots, RemoteFile initial) {
         var descriptor = (FileSaverDescriptor) new FileSaverDescriptor(title, DESCRIPTION).withRoots(roots);
         descriptor.setForcedToUseIdeaFileChooser(true);
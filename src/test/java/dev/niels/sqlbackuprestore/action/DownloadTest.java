@@ -0,0 +1,23 @@
+package dev.niels.sqlbackuprestore.action;
+
+import dev.niels.sqlbackuprestore.download.CompressionEstimate;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DownloadTest {
+    @Test
+    public void compressMessageKeepsThePercentageOfTheEstimate() {
+        var estimate = new CompressionEstimate(100_000_000L, 1000, 450, 10_000_000L);
+        assertTrue(estimate.describe().contains("compress to 45% of their size"));
+
+        var message = Download.compressMessage(false, 100_000_000L, estimate);
+        assertEquals("The database size is " + Util.humanReadableByteCountSI(100_000_000L) + ", do you want to compress the file before downloading?\n" + estimate.describe(), message);
+    }
+
+    @Test
+    public void compressMessageWithoutSizeOrEstimate() {
+        assertEquals("The original database was ? before compression. Do you want to apply additional compression before downloading?", Download.compressMessage(true, null, null));
+    }
+}